@@ -0,0 +1,54 @@
+package ljl.bilibili.entity.video.video_production.outbox;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * 事务发件箱：与业务数据在同一事务中写入，提交后再由中继执行对外调用
+ */
+@Data
+@TableName("outbox_event")
+@Accessors(chain = true)
+public class OutboxEvent {
+    @TableId(type = IdType.AUTO)
+    private Integer id;
+    /**
+     * 事件类型，决定中继执行哪种调用
+     */
+    @TableField("event_type")
+    private String eventType;
+    /**
+     * 调用参数的JSON
+     */
+    @TableField("payload")
+    private String payload;
+    /**
+     * 0待发送 1已发送 2已放弃
+     */
+    @TableField("status")
+    private Integer status;
+    /**
+     * 同一事务中前一个事件的id，前一个事件发送成功后才处理本事件
+     */
+    @TableField("depends_on")
+    private Integer dependsOn;
+    @TableField("attempts")
+    private Integer attempts;
+    /**
+     * 最早可被中继处理的时间，领取后推后一个租约时长，失败后按退避时间推后
+     */
+    @TableField("next_run_time")
+    private LocalDateTime nextRunTime;
+    @TableField("error")
+    private String error;
+    @TableField("create_time")
+    private LocalDateTime createTime;
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+}
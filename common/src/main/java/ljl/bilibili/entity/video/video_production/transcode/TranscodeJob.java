@@ -0,0 +1,69 @@
+package ljl.bilibili.entity.video.video_production.transcode;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * 转码任务，状态持久化在数据库中，服务重启或节点宕机后任务不丢失
+ */
+@Data
+@TableName("transcode_job")
+@Accessors(chain = true)
+public class TranscodeJob {
+    @TableId(type = IdType.AUTO)
+    private Integer id;
+    @TableField("video_id")
+    private Integer videoId;
+    @TableField("video_name")
+    private String videoName;
+    @TableField("url")
+    private String url;
+    @TableField("has_cover")
+    private Boolean hasCover;
+    /**
+     * 0排队中 1转码中 2已完成 3已失败
+     */
+    @TableField("status")
+    private Integer status;
+    @TableField("attempts")
+    private Integer attempts;
+    @TableField("max_attempts")
+    private Integer maxAttempts;
+    /**
+     * 转码进度百分比
+     */
+    @TableField("progress")
+    private Integer progress;
+    /**
+     * 当前所处的处理阶段
+     */
+    @TableField("stage")
+    private String stage;
+    /**
+     * 持有租约的转码节点
+     */
+    @TableField("worker")
+    private String worker;
+    /**
+     * 租约到期时间，节点靠心跳续约，过期未续约的任务可被其他节点接管
+     */
+    @TableField("lease_until")
+    private LocalDateTime leaseUntil;
+    /**
+     * 最早可被领取的时间，失败重试时按退避时间推后
+     */
+    @TableField("next_run_time")
+    private LocalDateTime nextRunTime;
+    @TableField("error")
+    private String error;
+    @TableField("create_time")
+    private LocalDateTime createTime;
+    @TableField("update_time")
+    private LocalDateTime updateTime;
+}
@@ -29,4 +29,19 @@ public class Video {
     private String url;
     @TableField("cover")
     private String cover;
+    /**
+     * HLS主播放列表地址，转码打包完成前为空
+     */
+    @TableField("manifest_url")
+    private String manifestUrl;
+    /**
+     * 拖动预览的WebVTT索引地址
+     */
+    @TableField("preview_url")
+    private String previewUrl;
+    /**
+     * 转码时生成的候选封面地址，逗号分隔
+     */
+    @TableField("cover_candidates")
+    private String coverCandidates;
 }
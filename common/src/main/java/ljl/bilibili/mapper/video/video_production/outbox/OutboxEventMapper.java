@@ -0,0 +1,7 @@
+package ljl.bilibili.mapper.video.video_production.outbox;
+import com.github.yulichang.base.MPJBaseMapper;
+import ljl.bilibili.entity.video.video_production.outbox.OutboxEvent;
+import org.apache.ibatis.annotations.Mapper;
+@Mapper
+public interface OutboxEventMapper extends MPJBaseMapper<OutboxEvent> {
+}
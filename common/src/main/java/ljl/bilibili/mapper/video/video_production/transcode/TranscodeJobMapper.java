@@ -0,0 +1,7 @@
+package ljl.bilibili.mapper.video.video_production.transcode;
+import com.github.yulichang.base.MPJBaseMapper;
+import ljl.bilibili.entity.video.video_production.transcode.TranscodeJob;
+import org.apache.ibatis.annotations.Mapper;
+@Mapper
+public interface TranscodeJobMapper extends MPJBaseMapper<TranscodeJob> {
+}
@@ -0,0 +1,17 @@
+package ljl.bilibili.serializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+/**
+ *与RemoveTSerializer对应的反序列化器，读取去掉T字符的localdatetime
+ */
+public class RemoveTDeserializer extends JsonDeserializer<LocalDateTime> {
+    @Override
+    public LocalDateTime deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        return LocalDateTime.parse(p.getValueAsString().replace(" ", "T"));
+    }
+}
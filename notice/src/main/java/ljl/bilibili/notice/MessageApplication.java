@@ -5,11 +5,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableFeignClients(basePackages = "ljl.bilibili.client")
 @MapperScan(basePackages = {"ljl.bilibili.mapper","ljl.bilibili.notice.mapper"})
 @ComponentScan(basePackages = "ljl.*")
+@EnableScheduling
 public class MessageApplication {
     public static void main(String[] args) {
         SpringApplication.run(MessageApplication.class,args);
@@ -0,0 +1,46 @@
+package ljl.bilibili.notice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步线程池配置类
+ */
+@Configuration
+public class AsyncConfig {
+    /**
+     * 分段并行转码的线程池，默认与CPU核数相同；队列满时由提交任务的消费线程自己转码，不丢任务
+     */
+    @Bean(name = "transcodeExecutor")
+    public ThreadPoolTaskExecutor transcodeExecutor(@Value("${transcode.parallel.workers:0}") int workers) {
+        int poolSize = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("transcode-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+    /**
+     * 处理转码任务的线程池，线程数即本节点同时处理的任务数，由工作者先占用额度再提交；
+     * 工作者在任务结束前就归还额度，线程可能还没回到空闲状态，所以留与线程数相同的队列接住下一次提交，
+     * 仍被拒绝时由工作者退回任务，不在调度线程上转码
+     */
+    @Bean(name = "transcodeJobExecutor")
+    public ThreadPoolTaskExecutor transcodeJobExecutor(@Value("${transcode.job.node-limit:1}") int nodeLimit) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(nodeLimit);
+        executor.setMaxPoolSize(nodeLimit);
+        executor.setQueueCapacity(nodeLimit);
+        executor.setThreadNamePrefix("transcode-job-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
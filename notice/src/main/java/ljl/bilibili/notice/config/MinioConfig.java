@@ -0,0 +1,25 @@
+package ljl.bilibili.notice.config;
+import io.minio.MinioClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+@Configuration
+public class MinioConfig {
+    @Value("${minio.url}")
+    private String endpoint;
+
+    @Value("${minio.access.name}")
+    private String accessKey;
+
+    @Value("${minio.access.secret}")
+    private String secretKey;
+
+    @Bean
+    public MinioClient minioClient() {
+        return MinioClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build();
+    }
+
+}
@@ -14,4 +14,27 @@ public class Constant {
     public static final String USER_UPDATE_KEY="update:user";
     public static final String VIDEO_LENGTH="video_length";
     public static final String VIDEO_ID="video_id";
+    public static final String FEED_VERSION_KEY="feed:version";
+    public static final int TRANSCODE_QUEUED=0;
+    public static final int TRANSCODE_RUNNING=1;
+    public static final int TRANSCODE_DONE=2;
+    public static final int TRANSCODE_FAILED=3;
+    public static final String TRANSCODE_SLOT_KEY="transcode:slots";
+    /**
+     * 与视频服务共用的秒传指纹索引：视频文件名-文件指纹，文件指纹-原始文件副本名
+     */
+    public static final String VIDEO_FINGERPRINT_OBJECT_KEY="video:fingerprint:object";
+    public static final String VIDEO_FINGERPRINT_ORIGINAL_KEY="video:fingerprint:original";
+    /**
+     * 覆盖前保留的原始文件副本的对象名前缀
+     */
+    public static final String ORIGINAL_VIDEO_PREFIX="original/";
+    public static final String STAGE_DOWNLOAD="download";
+    public static final String STAGE_REMUX="remux";
+    public static final String STAGE_COVER="cover";
+    public static final String STAGE_THUMBNAIL="thumbnail";
+    public static final String STAGE_TRANSCODE="transcode";
+    public static final String STAGE_UPLOAD="upload";
+    public static final String STAGE_HLS="hls";
+    public static final String STAGE_DONE="done";
 }
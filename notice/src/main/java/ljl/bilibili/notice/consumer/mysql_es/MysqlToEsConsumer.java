@@ -30,6 +30,8 @@ public class MysqlToEsConsumer implements RocketMQListener<MessageExt> {
     ObjectMapper objectMapper;
     @Resource
     RedisTemplate objectRedisTemplate;
+    @Resource
+    RedisTemplate<String, String> redisTemplate;
     /**
      *根据map的键值对不同将其存入特定redis键值对
      */
@@ -43,6 +45,10 @@ public class MysqlToEsConsumer implements RocketMQListener<MessageExt> {
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
+        //视频增删改或用户信息修改会影响首页展示的内容，首页缓存版本号加一使旧缓存失效
+        if(!(map.get(OPERATION_TYPE).equals(OPERATION_TYPE_ADD) && !map.get(TABLE_NAME).equals(VIDEO_TABLE_NAME))){
+            redisTemplate.opsForValue().increment(FEED_VERSION_KEY);
+        }
         //如果操作类型是新增的话
         if(map.get(OPERATION_TYPE).equals(OPERATION_TYPE_ADD)){
             log.info("add");
@@ -0,0 +1,132 @@
+package ljl.bilibili.notice.consumer.transcode;
+
+import ljl.bilibili.client.pojo.UploadVideo;
+import ljl.bilibili.entity.video.video_production.transcode.TranscodeJob;
+import ljl.bilibili.notice.service.transcode.TranscodeJobService;
+import ljl.bilibili.notice.service.video_encode.VideoEncodeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 转码任务工作者
+ * 定时从任务表领取任务，本节点同时处理的任务数不超过node-limit，全局并发由任务队列的额度控制；
+ * 处理期间按租约的三分之一周期续约，失败后交由任务队列按退避时间重试，不占用请求线程轮询等待；
+ * 续约发现租约已被其他节点接管时中断处理线程，结束正在运行的ffmpeg，不再覆盖视频文件，也不再更新任务状态。
+ */
+@Component
+@Slf4j
+public class TranscodeJobWorker {
+    private final String workerId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    @Resource
+    TranscodeJobService transcodeJobService;
+    @Resource
+    VideoEncodeService videoEncodeService;
+    @Resource(name = "transcodeJobExecutor")
+    ThreadPoolTaskExecutor transcodeJobExecutor;
+    @Value("${transcode.job.node-limit:1}")
+    int nodeLimit;
+    @Value("${transcode.job.lease-seconds:60}")
+    long leaseSeconds;
+    private Semaphore running;
+    /**
+     * 续约线程不注册为Bean，避免被@Scheduled当作默认调度器
+     */
+    private ThreadPoolTaskScheduler heartbeatScheduler;
+
+    @PostConstruct
+    public void init() {
+        running = new Semaphore(nodeLimit);
+        heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.setPoolSize(1);
+        heartbeatScheduler.setThreadNamePrefix("transcode-heartbeat-");
+        heartbeatScheduler.initialize();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        heartbeatScheduler.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${transcode.job.poll-interval-ms:2000}")
+    public void poll() {
+        while (running.tryAcquire()) {
+            TranscodeJob job;
+            try {
+                job = transcodeJobService.claim(workerId);
+            } catch (Exception e) {
+                running.release();
+                log.error("领取转码任务失败", e);
+                return;
+            }
+            if (job == null) {
+                running.release();
+                return;
+            }
+            try {
+                transcodeJobExecutor.execute(() -> process(job));
+            } catch (TaskRejectedException e) {
+                running.release();
+                transcodeJobService.giveBack(job);
+                log.warn("转码线程池已满，退回任务{}", job.getId());
+                return;
+            }
+        }
+    }
+
+    private void process(TranscodeJob job) {
+        Thread processThread = Thread.currentThread();
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+        ScheduledFuture<?> heartbeat = heartbeatScheduler.scheduleAtFixedRate(() -> {
+            try {
+                if (!transcodeJobService.heartbeat(job) && leaseLost.compareAndSet(false, true)) {
+                    log.warn("转码任务{}的租约已被其他节点接管，停止本节点的处理", job.getId());
+                    // 与处理结束互斥，避免中断到线程池接着执行的下一个任务
+                    synchronized (finished) {
+                        if (!finished.get()) {
+                            processThread.interrupt();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.error("转码任务{}续约失败", job.getId(), e);
+            }
+        }, leaseSeconds * 1000 / 3);
+        try {
+            UploadVideo uploadVideo = new UploadVideo().setVideoId(job.getVideoId()).setVideoName(job.getVideoName())
+                    .setUrl(job.getUrl()).setHasCover(job.getHasCover());
+            videoEncodeService.encode(uploadVideo, (stage, progress) -> transcodeJobService.progress(job, stage, progress));
+            if (!leaseLost.get()) {
+                transcodeJobService.complete(job);
+            }
+        } catch (Exception e) {
+            if (leaseLost.get()) {
+                log.info("转码任务{}已停止", job.getId());
+            } else {
+                transcodeJobService.fail(job, e);
+            }
+        } finally {
+            heartbeat.cancel(false);
+            synchronized (finished) {
+                finished.set(true);
+                // 清掉处理结束前才到达的中断，不影响线程池的下一个任务
+                Thread.interrupted();
+            }
+            running.release();
+        }
+    }
+}
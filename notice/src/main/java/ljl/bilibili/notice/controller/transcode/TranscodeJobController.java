@@ -0,0 +1,26 @@
+package ljl.bilibili.notice.controller.transcode;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import ljl.bilibili.notice.service.transcode.TranscodeJobService;
+import ljl.bilibili.notice.vo.response.transcode.TranscodeProgressResponse;
+import ljl.bilibili.util.Result;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+@RestController
+@RequestMapping("/transcode")
+@Api(tags = "转码进度")
+public class TranscodeJobController {
+    @Resource
+    TranscodeJobService transcodeJobService;
+    @ApiOperation("获取视频最近一次转码任务的状态和进度")
+    @GetMapping("/getProgress/{videoId}")
+    public Result<TranscodeProgressResponse> getProgress(@PathVariable Integer videoId) {
+        return transcodeJobService.getProgress(videoId);
+    }
+}
@@ -0,0 +1,21 @@
+package ljl.bilibili.notice.pojo;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 一次解码生成的候选封面和拖动预览
+ */
+@Data
+@Accessors(chain = true)
+public class Thumbnails {
+    /**
+     * 按时间均匀分布的候选封面地址
+     */
+    List<String> coverUrls;
+    /**
+     * 拖动预览的WebVTT索引地址，每条记录指向雪碧图中的一格
+     */
+    String previewUrl;
+}
@@ -0,0 +1,30 @@
+package ljl.bilibili.notice.pojo;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 从MP4/MOV容器的moov盒子读出的元数据
+ */
+@Data
+@Accessors(chain = true)
+public class VideoProbe {
+    /**
+     * 时长，单位秒
+     */
+    int durationSeconds;
+    /**
+     * 视频轨道的样本格式，如avc1、hvc1
+     */
+    String videoCodec;
+    int width;
+    int height;
+    boolean hasAudio;
+    /**
+     * moov是否在mdat之前，在前时播放器无需读到文件末尾就能开始播放
+     */
+    boolean moovAtFront;
+
+    public boolean isH264() {
+        return "avc1".equals(videoCodec) || "avc3".equals(videoCodec);
+    }
+}
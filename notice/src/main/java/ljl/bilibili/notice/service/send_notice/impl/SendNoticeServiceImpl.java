@@ -7,6 +7,7 @@ import ljl.bilibili.entity.chat.Chat;
 import ljl.bilibili.entity.notice.dynamic.Dynamic;
 import ljl.bilibili.entity.notice.comment.CommentNotice;
 import ljl.bilibili.notice.service.send_notice.SendNoticeService;
+import ljl.bilibili.notice.service.transcode.TranscodeJobService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
@@ -26,6 +27,8 @@ public class SendNoticeServiceImpl implements SendNoticeService {
 
     @Resource
     ObjectMapper objectMapper;
+    @Resource
+    TranscodeJobService transcodeJobService;
 @Override
     public Boolean sendVideoUpdateMessageWithCallback(Dynamic dynamic) throws JsonProcessingException {
         String topic = "dynamic";
@@ -102,22 +105,11 @@ public class SendNoticeServiceImpl implements SendNoticeService {
 });
         return true;
     }
+    /**
+     * 写入持久化的转码任务表，由转码工作者按并发额度领取，不再经消息队列
+     */
     @Override
     public Boolean sendUploadNotice(UploadVideo uploadVideo)throws JsonProcessingException {
-        String topic="video-encode";
-        String jsonMessage=objectMapper.writeValueAsString(uploadVideo);
-        rocketMQTemplate.asyncSend(topic, jsonMessage, new SendCallback() {
-            @Override
-            public void onSuccess(SendResult sendResult) {
-                log.info("Rocket发射成功");
-            }
-
-            @Override
-            public void onException(Throwable throwable) {
-                throwable.getMessage();
-            log.error("坠机:");
-            }
-        });
-        return true;
+        return transcodeJobService.enqueue(uploadVideo);
     }
 }
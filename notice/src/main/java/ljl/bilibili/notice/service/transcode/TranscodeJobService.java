@@ -0,0 +1,42 @@
+package ljl.bilibili.notice.service.transcode;
+
+import ljl.bilibili.client.pojo.UploadVideo;
+import ljl.bilibili.entity.video.video_production.transcode.TranscodeJob;
+import ljl.bilibili.notice.vo.response.transcode.TranscodeProgressResponse;
+import ljl.bilibili.util.Result;
+
+/**
+ * 持久化的转码任务队列
+ */
+public interface TranscodeJobService {
+    /**
+     * 新建排队中的任务，同一文件已有未结束的任务时不重复入队（秒传复用同一文件的视频在该任务完成后沿用结果）
+     */
+    Boolean enqueue(UploadVideo uploadVideo);
+
+    /**
+     * 在全局并发额度内领取一个到期的任务并持有租约，没有可领取的任务或额度已满时返回null
+     */
+    TranscodeJob claim(String worker);
+
+    /**
+     * 续约，租约已被其他节点接管时返回false
+     */
+    Boolean heartbeat(TranscodeJob job);
+
+    void progress(TranscodeJob job, String stage, Integer progress);
+
+    void complete(TranscodeJob job);
+
+    /**
+     * 未超过最大次数时按指数退避重新排队，否则标记为失败
+     */
+    void fail(TranscodeJob job, Throwable cause);
+
+    /**
+     * 领取后未能开始处理时退回任务，不计入尝试次数
+     */
+    void giveBack(TranscodeJob job);
+
+    Result<TranscodeProgressResponse> getProgress(Integer videoId);
+}
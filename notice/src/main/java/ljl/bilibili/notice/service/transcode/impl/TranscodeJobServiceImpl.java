@@ -0,0 +1,243 @@
+package ljl.bilibili.notice.service.transcode.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import ljl.bilibili.client.pojo.UploadVideo;
+import ljl.bilibili.entity.video.video_production.transcode.TranscodeJob;
+import ljl.bilibili.mapper.video.video_production.transcode.TranscodeJobMapper;
+import ljl.bilibili.notice.service.transcode.TranscodeJobService;
+import ljl.bilibili.notice.vo.response.transcode.TranscodeProgressResponse;
+import ljl.bilibili.util.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+
+import static ljl.bilibili.notice.constant.Constant.*;
+
+/**
+ * 转码任务队列
+ * 任务行保存在transcode_job表中，领取时用带状态条件的UPDATE抢占，抢到的节点持有租约并定期续约；
+ * 节点宕机后租约过期，任务会被其他节点重新领取。
+ * 全局并发额度用Redis有序集合记录，成员为“任务id:节点”、分数为租约到期时间，过期成员在领取时清掉，不会因为节点宕机而永久占用额度；
+ * 各节点只续期和释放自己的成员，抢占失败的节点不会释放掉抢到任务的节点的额度。
+ */
+@Service
+@Slf4j
+public class TranscodeJobServiceImpl implements TranscodeJobService {
+    /**
+     * 清理过期额度后，本节点已持有该任务的额度则续期，否则在额度未满时占用
+     */
+    private static final DefaultRedisScript<Long> ACQUIRE_SLOT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1]) " +
+            "if redis.call('ZSCORE', KEYS[1], ARGV[3]) or redis.call('ZCARD', KEYS[1]) < tonumber(ARGV[4]) then " +
+            "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[3]) return 1 end " +
+            "return 0", Long.class);
+    private static final int MAX_ERROR_LENGTH = 500;
+    @Resource
+    TranscodeJobMapper transcodeJobMapper;
+    @Resource
+    RedisTemplate<String, String> redisTemplate;
+    @Value("${transcode.job.global-limit:3}")
+    int globalLimit;
+    @Value("${transcode.job.lease-seconds:60}")
+    long leaseSeconds;
+    @Value("${transcode.job.max-attempts:5}")
+    int maxAttempts;
+    @Value("${transcode.job.backoff-seconds:30}")
+    long backoffSeconds;
+    @Value("${transcode.job.max-backoff-seconds:1800}")
+    long maxBackoffSeconds;
+
+    @Override
+    public Boolean enqueue(UploadVideo uploadVideo) {
+        LambdaQueryWrapper<TranscodeJob> wrapper = new LambdaQueryWrapper<>();
+        // 秒传复用同一文件的视频不再入队，两个任务会同时下载并覆盖同一个文件；完成后由转码服务把结果补给同一文件的其他视频
+        wrapper.eq(TranscodeJob::getUrl, uploadVideo.getUrl())
+                .in(TranscodeJob::getStatus, TRANSCODE_QUEUED, TRANSCODE_RUNNING);
+        if (transcodeJobMapper.selectCount(wrapper) > 0) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TranscodeJob job = new TranscodeJob().setVideoId(uploadVideo.getVideoId())
+                .setVideoName(uploadVideo.getVideoName())
+                .setUrl(uploadVideo.getUrl())
+                .setHasCover(uploadVideo.getHasCover())
+                .setStatus(TRANSCODE_QUEUED)
+                .setAttempts(0)
+                .setMaxAttempts(maxAttempts)
+                .setProgress(0)
+                .setNextRunTime(now)
+                .setCreateTime(now)
+                .setUpdateTime(now);
+        transcodeJobMapper.insert(job);
+        return true;
+    }
+
+    @Override
+    public TranscodeJob claim(String worker) {
+        LocalDateTime now = LocalDateTime.now();
+        // 排队到期的任务，以及租约过期（持有节点已宕机）的任务都可领取
+        LambdaQueryWrapper<TranscodeJob> wrapper = new LambdaQueryWrapper<>();
+        wrapper.and(w -> w.eq(TranscodeJob::getStatus, TRANSCODE_QUEUED).le(TranscodeJob::getNextRunTime, now)
+                        .or().eq(TranscodeJob::getStatus, TRANSCODE_RUNNING).lt(TranscodeJob::getLeaseUntil, now))
+                .orderByAsc(TranscodeJob::getNextRunTime)
+                .last("limit 10");
+        List<TranscodeJob> candidates = transcodeJobMapper.selectList(wrapper);
+        for (TranscodeJob candidate : candidates) {
+            if (candidate.getAttempts() >= candidate.getMaxAttempts()) {
+                // 反复在转码中途宕机的任务不再领取
+                LambdaUpdateWrapper<TranscodeJob> giveUp = new LambdaUpdateWrapper<>();
+                giveUp.set(TranscodeJob::getStatus, TRANSCODE_FAILED)
+                        .set(TranscodeJob::getError, "租约多次过期")
+                        .set(TranscodeJob::getUpdateTime, now)
+                        .eq(TranscodeJob::getId, candidate.getId())
+                        .eq(TranscodeJob::getStatus, candidate.getStatus())
+                        .eq(TranscodeJob::getAttempts, candidate.getAttempts());
+                transcodeJobMapper.update(null, giveUp);
+                continue;
+            }
+            LocalDateTime leaseUntil = now.plusSeconds(leaseSeconds);
+            String slot = slotMember(candidate.getId(), worker);
+            if (!acquireSlot(slot, now, leaseUntil)) {
+                return null;
+            }
+            // 以读到的状态和次数为条件抢占，多个节点同时领取同一任务时只有一个能更新成功
+            LambdaUpdateWrapper<TranscodeJob> update = new LambdaUpdateWrapper<>();
+            update.set(TranscodeJob::getStatus, TRANSCODE_RUNNING)
+                    .set(TranscodeJob::getWorker, worker)
+                    .set(TranscodeJob::getLeaseUntil, leaseUntil)
+                    .set(TranscodeJob::getAttempts, candidate.getAttempts() + 1)
+                    .set(TranscodeJob::getProgress, 0)
+                    .set(TranscodeJob::getUpdateTime, now)
+                    .eq(TranscodeJob::getId, candidate.getId())
+                    .eq(TranscodeJob::getStatus, candidate.getStatus())
+                    .eq(TranscodeJob::getAttempts, candidate.getAttempts());
+            if (transcodeJobMapper.update(null, update) == 1) {
+                return candidate.setStatus(TRANSCODE_RUNNING).setWorker(worker).setLeaseUntil(leaseUntil)
+                        .setAttempts(candidate.getAttempts() + 1).setProgress(0);
+            }
+            releaseSlot(slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Boolean heartbeat(TranscodeJob job) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseUntil = now.plusSeconds(leaseSeconds);
+        LambdaUpdateWrapper<TranscodeJob> update = ownedBy(job);
+        update.set(TranscodeJob::getLeaseUntil, leaseUntil).set(TranscodeJob::getUpdateTime, now);
+        if (transcodeJobMapper.update(null, update) != 1) {
+            return false;
+        }
+        job.setLeaseUntil(leaseUntil);
+        redisTemplate.opsForZSet().add(TRANSCODE_SLOT_KEY, slotMember(job.getId(), job.getWorker()), toMillis(leaseUntil));
+        return true;
+    }
+
+    @Override
+    public void progress(TranscodeJob job, String stage, Integer progress) {
+        LambdaUpdateWrapper<TranscodeJob> update = ownedBy(job);
+        update.set(TranscodeJob::getStage, stage).set(TranscodeJob::getProgress, progress)
+                .set(TranscodeJob::getUpdateTime, LocalDateTime.now());
+        transcodeJobMapper.update(null, update);
+    }
+
+    @Override
+    public void complete(TranscodeJob job) {
+        LambdaUpdateWrapper<TranscodeJob> update = ownedBy(job);
+        update.set(TranscodeJob::getStatus, TRANSCODE_DONE)
+                .set(TranscodeJob::getStage, STAGE_DONE)
+                .set(TranscodeJob::getProgress, 100)
+                .set(TranscodeJob::getError, null)
+                .set(TranscodeJob::getUpdateTime, LocalDateTime.now());
+        if (transcodeJobMapper.update(null, update) == 1) {
+            releaseSlot(slotMember(job.getId(), job.getWorker()));
+        }
+    }
+
+    @Override
+    public void fail(TranscodeJob job, Throwable cause) {
+        LocalDateTime now = LocalDateTime.now();
+        String error = String.valueOf(cause);
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        LambdaUpdateWrapper<TranscodeJob> update = ownedBy(job);
+        update.set(TranscodeJob::getError, error).set(TranscodeJob::getUpdateTime, now);
+        if (job.getAttempts() < job.getMaxAttempts()) {
+            // 第n次失败后等待 backoff * 2^(n-1) 秒再重试
+            long delay = Math.min(maxBackoffSeconds, backoffSeconds << Math.min(job.getAttempts() - 1, 20));
+            update.set(TranscodeJob::getStatus, TRANSCODE_QUEUED).set(TranscodeJob::getNextRunTime, now.plusSeconds(delay));
+            log.warn("转码任务{}第{}次失败，{}秒后重试", job.getId(), job.getAttempts(), delay, cause);
+        } else {
+            update.set(TranscodeJob::getStatus, TRANSCODE_FAILED);
+            log.error("转码任务{}失败{}次，不再重试", job.getId(), job.getAttempts(), cause);
+        }
+        if (transcodeJobMapper.update(null, update) == 1) {
+            releaseSlot(slotMember(job.getId(), job.getWorker()));
+        }
+    }
+
+    @Override
+    public void giveBack(TranscodeJob job) {
+        LambdaUpdateWrapper<TranscodeJob> update = ownedBy(job);
+        LocalDateTime now = LocalDateTime.now();
+        update.set(TranscodeJob::getStatus, TRANSCODE_QUEUED)
+                .set(TranscodeJob::getAttempts, job.getAttempts() - 1)
+                .set(TranscodeJob::getNextRunTime, now)
+                .set(TranscodeJob::getUpdateTime, now);
+        if (transcodeJobMapper.update(null, update) == 1) {
+            releaseSlot(slotMember(job.getId(), job.getWorker()));
+        }
+    }
+
+    @Override
+    public Result<TranscodeProgressResponse> getProgress(Integer videoId) {
+        LambdaQueryWrapper<TranscodeJob> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(TranscodeJob::getVideoId, videoId).orderByDesc(TranscodeJob::getId).last("limit 1");
+        TranscodeJob job = transcodeJobMapper.selectOne(wrapper);
+        if (job == null) {
+            return Result.error("没有转码任务");
+        }
+        return Result.data(new TranscodeProgressResponse(job));
+    }
+
+    /**
+     * 只更新本节点仍持有租约的任务，租约被接管后旧节点的写入不生效
+     */
+    private LambdaUpdateWrapper<TranscodeJob> ownedBy(TranscodeJob job) {
+        LambdaUpdateWrapper<TranscodeJob> update = new LambdaUpdateWrapper<>();
+        update.eq(TranscodeJob::getId, job.getId())
+                .eq(TranscodeJob::getWorker, job.getWorker())
+                .eq(TranscodeJob::getAttempts, job.getAttempts())
+                .eq(TranscodeJob::getStatus, TRANSCODE_RUNNING);
+        return update;
+    }
+
+    private boolean acquireSlot(String member, LocalDateTime now, LocalDateTime leaseUntil) {
+        Long acquired = redisTemplate.execute(ACQUIRE_SLOT_SCRIPT, Collections.singletonList(TRANSCODE_SLOT_KEY),
+                String.valueOf(toMillis(now)), String.valueOf(toMillis(leaseUntil)), member, String.valueOf(globalLimit));
+        return acquired != null && acquired == 1L;
+    }
+
+    private void releaseSlot(String member) {
+        redisTemplate.opsForZSet().remove(TRANSCODE_SLOT_KEY, member);
+    }
+
+    private static String slotMember(Integer jobId, String worker) {
+        return jobId + ":" + worker;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,14 @@
+package ljl.bilibili.notice.service.video_encode;
+
+/**
+ * 把视频打包为多码率HLS（360p/720p/1080p）并上传到MinIO
+ */
+public interface HlsPackagingService {
+    /**
+     * 一次解码同时编码各个码率，切片和播放列表上传到video桶的hls/{objectName}/目录下
+     * @param source 本地文件路径，或可按范围请求读取的视频地址
+     * @param sourceHeight 源视频高度，高于源视频的码率不生成
+     * @return 主播放列表的访问地址
+     */
+    String packageHls(String objectName, String source, int sourceHeight, boolean hasAudio);
+}
@@ -0,0 +1,13 @@
+package ljl.bilibili.notice.service.video_encode;
+
+import java.io.File;
+
+/**
+ * 分段并行转码：在关键帧处无损切分源视频，各段在线程池中并行编码为h264，再无损拼接
+ */
+public interface ParallelTranscodeService {
+    /**
+     * 转码为h264/aac的mp4
+     */
+    void transcodeToH264(File source, File target, boolean hasAudio);
+}
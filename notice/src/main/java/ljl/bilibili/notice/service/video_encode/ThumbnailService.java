@@ -0,0 +1,14 @@
+package ljl.bilibili.notice.service.video_encode;
+
+import ljl.bilibili.notice.pojo.Thumbnails;
+
+/**
+ * 候选封面、拖动预览雪碧图和WebVTT索引，一次解码全部生成并上传到video-cover桶的thumbs/{objectName}/目录下
+ */
+public interface ThumbnailService {
+    /**
+     * @param source 本地文件路径，或可按范围请求读取的视频地址
+     * @param durationSeconds 视频时长，用于计算候选封面的时间点和索引的总时长
+     */
+    Thumbnails generate(String objectName, String source, int durationSeconds);
+}
@@ -0,0 +1,16 @@
+package ljl.bilibili.notice.service.video_encode;
+
+import ljl.bilibili.client.pojo.UploadVideo;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 视频转码、截取封面、计算时长和HLS打包
+ */
+public interface VideoEncodeService {
+    /**
+     * 处理失败时抛出异常，由转码任务决定是否重试
+     * @param progress 每进入一个阶段回调一次（阶段名，进度百分比）
+     */
+    void encode(UploadVideo uploadVideo, BiConsumer<String, Integer> progress) throws Exception;
+}
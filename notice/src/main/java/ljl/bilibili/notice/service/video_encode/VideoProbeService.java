@@ -0,0 +1,13 @@
+package ljl.bilibili.notice.service.video_encode;
+
+import ljl.bilibili.notice.pojo.VideoProbe;
+
+/**
+ * 只用范围请求读取容器头部获取视频元数据，不下载整个文件
+ */
+public interface VideoProbeService {
+    /**
+     * 非MP4/MOV容器、找不到moov或解析失败时返回null，由调用方退回到下载整个文件
+     */
+    VideoProbe probe(String objectName);
+}
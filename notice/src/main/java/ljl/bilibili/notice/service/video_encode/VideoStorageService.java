@@ -0,0 +1,38 @@
+package ljl.bilibili.notice.service.video_encode;
+
+import java.io.File;
+
+/**
+ * 转码服务直接读写MinIO中的视频和封面，文件内容只经过本地磁盘，不经过视频服务和堆内存
+ */
+public interface VideoStorageService {
+    /**
+     * 按分段范围请求把视频下载到本地文件
+     */
+    void downloadVideo(String objectName, File target);
+
+    /**
+     * 从本地文件按已知长度分片上传视频，覆盖同名对象
+     */
+    void uploadVideo(String objectName, File file, String contentType);
+
+    void uploadCover(String objectName, File file, String contentType);
+
+    /**
+     * 覆盖视频前调用：文件登记过秒传指纹时在服务端复制一份原始文件，秒传校验改读这份副本，
+     * 客户端持有的仍是原始文件，转码或重新封装后的文件内容已经不同
+     */
+    void keepOriginal(String objectName);
+
+    long size(String objectName);
+
+    /**
+     * 范围请求读取视频的一段，用于只读取容器头部的元数据
+     */
+    byte[] readRange(String objectName, long offset, int length);
+
+    /**
+     * 视频的预签名下载地址，ffmpeg可直接按范围请求读取，不必先下载到本地
+     */
+    String presignedUrl(String objectName, int expiryMinutes);
+}
@@ -0,0 +1,180 @@
+package ljl.bilibili.notice.service.video_encode.impl;
+
+import cn.hutool.core.io.FileUtil;
+import ljl.bilibili.notice.service.video_encode.HlsPackagingService;
+import ljl.bilibili.notice.service.video_encode.VideoStorageService;
+import ljl.bilibili.notice.util.FfmpegUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 用JAVE自带的ffmpeg：split滤镜把一次解码的画面分给各个码率编码，hls封装器生成各码率的播放列表和主播放列表
+ */
+@Slf4j
+@Service
+public class HlsPackagingServiceImpl implements HlsPackagingService {
+    /**
+     * 高度、视频码率、最大码率、缓冲区大小（kbps）
+     */
+    private static final int[][] RENDITIONS = {
+            {360, 800, 856, 1200},
+            {720, 2800, 2996, 4200},
+            {1080, 5000, 5350, 7500}
+    };
+    @Resource
+    VideoStorageService videoStorageService;
+    @Value("${hls.segment-type:mpegts}")
+    private String segmentType;
+    @Value("${hls.segment-seconds:6}")
+    private int segmentSeconds;
+    @Value("${hls.url-prefix:http://localhost:9000/video/}")
+    private String urlPrefix;
+    @Value("${hls.timeout-minutes:60}")
+    private long timeoutMinutes;
+
+    @Override
+    public String packageHls(String objectName, String source, int sourceHeight, boolean hasAudio) {
+        File workDirectory = null;
+        try {
+            workDirectory = Files.createTempDirectory(".hls").toFile();
+            File outputDirectory = new File(workDirectory, "hls");
+            List<int[]> renditions = new ArrayList<>();
+            for (int[] rendition : RENDITIONS) {
+                // 至少保留最低码率，其余不超过源视频分辨率
+                if (renditions.isEmpty() || rendition[0] <= sourceHeight) {
+                    renditions.add(rendition);
+                }
+            }
+            for (int i = 0; i < renditions.size(); i++) {
+                new File(outputDirectory, String.valueOf(i)).mkdirs();
+            }
+            FfmpegUtil.run(buildArguments(source, outputDirectory, renditions, hasAudio), new File(workDirectory, "ffmpeg.log"), timeoutMinutes);
+            String prefix = "hls/" + objectName + "/";
+            Path root = outputDirectory.toPath();
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            // 先传切片和各码率播放列表，最后传主播放列表，主播放列表可访问时其引用的文件都已就绪
+            Path master = root.resolve("master.m3u8");
+            for (Path file : files) {
+                if (!file.equals(master)) {
+                    upload(prefix, root, file);
+                }
+            }
+            upload(prefix, root, master);
+            log.info("HLS打包完成：" + objectName + "，码率数" + renditions.size());
+            return urlPrefix + prefix + "master.m3u8";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("HLS打包被中断", e);
+        } catch (Exception e) {
+            throw new RuntimeException("HLS打包失败", e);
+        } finally {
+            if (workDirectory != null) {
+                FileUtil.del(workDirectory);
+            }
+        }
+    }
+
+    private List<String> buildArguments(String source, File outputDirectory, List<int[]> renditions, boolean hasAudio) {
+        boolean fmp4 = "fmp4".equals(segmentType);
+        List<String> command = new ArrayList<>();
+        command.add("-i");
+        command.add(source);
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(renditions.size());
+        for (int i = 0; i < renditions.size(); i++) {
+            filter.append("[v").append(i).append("]");
+        }
+        for (int i = 0; i < renditions.size(); i++) {
+            filter.append(";[v").append(i).append("]scale=-2:").append(renditions.get(i)[0]).append("[v").append(i).append("out]");
+        }
+        command.add("-filter_complex");
+        command.add(filter.toString());
+        StringBuilder streamMap = new StringBuilder();
+        for (int i = 0; i < renditions.size(); i++) {
+            int[] rendition = renditions.get(i);
+            command.add("-map");
+            command.add("[v" + i + "out]");
+            command.add("-c:v:" + i);
+            command.add("libx264");
+            command.add("-b:v:" + i);
+            command.add(rendition[1] + "k");
+            command.add("-maxrate:v:" + i);
+            command.add(rendition[2] + "k");
+            command.add("-bufsize:v:" + i);
+            command.add(rendition[3] + "k");
+            streamMap.append(i == 0 ? "" : " ").append("v:").append(i);
+            if (hasAudio) {
+                streamMap.append(",a:").append(i);
+            }
+        }
+        if (hasAudio) {
+            for (int i = 0; i < renditions.size(); i++) {
+                command.add("-map");
+                command.add("a:0");
+            }
+            command.add("-c:a");
+            command.add("aac");
+            command.add("-b:a");
+            command.add("128k");
+            command.add("-ac");
+            command.add("2");
+        }
+        // 各码率在相同时间点强制关键帧，切片边界对齐，播放器可以在切片之间切换码率
+        command.add("-preset");
+        command.add("veryfast");
+        command.add("-sc_threshold");
+        command.add("0");
+        command.add("-force_key_frames");
+        command.add("expr:gte(t,n_forced*" + segmentSeconds + ")");
+        command.add("-f");
+        command.add("hls");
+        command.add("-hls_time");
+        command.add(String.valueOf(segmentSeconds));
+        command.add("-hls_playlist_type");
+        command.add("vod");
+        command.add("-hls_segment_type");
+        command.add(fmp4 ? "fmp4" : "mpegts");
+        if (fmp4) {
+            command.add("-hls_fmp4_init_filename");
+            command.add("init.mp4");
+        }
+        command.add("-hls_segment_filename");
+        command.add(new File(outputDirectory, "%v" + File.separator + "segment_%03d." + (fmp4 ? "m4s" : "ts")).getAbsolutePath());
+        command.add("-master_pl_name");
+        command.add("master.m3u8");
+        command.add("-var_stream_map");
+        command.add(streamMap.toString());
+        command.add(new File(outputDirectory, "%v" + File.separator + "index.m3u8").getAbsolutePath());
+        return command;
+    }
+
+    private void upload(String prefix, Path root, Path file) {
+        String relative = root.relativize(file).toString().replace(File.separatorChar, '/');
+        videoStorageService.uploadVideo(prefix + relative, file.toFile(), contentType(relative));
+    }
+
+    private String contentType(String name) {
+        if (name.endsWith(".m3u8")) {
+            return "application/vnd.apple.mpegurl";
+        }
+        if (name.endsWith(".ts")) {
+            return "video/mp2t";
+        }
+        if (name.endsWith(".m4s")) {
+            return "video/iso.segment";
+        }
+        return "video/mp4";
+    }
+}
@@ -0,0 +1,106 @@
+package ljl.bilibili.notice.service.video_encode.impl;
+
+import cn.hutool.core.io.FileUtil;
+import ljl.bilibili.notice.service.video_encode.ParallelTranscodeService;
+import ljl.bilibili.notice.util.FfmpegUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 1.用segment封装器对视频流做流复制，只能在关键帧处切开，切分本身不重新编码
+ * 2.每段只编码视频，音频整条单独编码一次，避免每段AAC编码器的前导静音造成段间杂音
+ * 3.用concat分离器按顺序流复制拼接各段视频，同时封装音频，moov前置便于边下边播
+ */
+@Slf4j
+@Service
+public class ParallelTranscodeServiceImpl implements ParallelTranscodeService {
+    @Resource
+    ThreadPoolTaskExecutor transcodeExecutor;
+    @Value("${transcode.parallel.segment-seconds:30}")
+    private int segmentSeconds;
+    @Value("${transcode.timeout-minutes:60}")
+    private long timeoutMinutes;
+
+    @Override
+    public void transcodeToH264(File source, File target, boolean hasAudio) {
+        File workDirectory = null;
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            workDirectory = Files.createTempDirectory(".transcode").toFile();
+            File directory = workDirectory;
+            FfmpegUtil.run(Arrays.asList("-i", source.getAbsolutePath(), "-map", "0:v:0", "-c", "copy",
+                    "-f", "segment", "-segment_time", String.valueOf(segmentSeconds), "-reset_timestamps", "1",
+                    new File(directory, "source_%05d.mkv").getAbsolutePath()), new File(directory, "split.log"), timeoutMinutes);
+            File[] segments = directory.listFiles((dir, name) -> name.startsWith("source_"));
+            if (segments == null || segments.length == 0) {
+                throw new IllegalStateException("切分视频失败");
+            }
+            Arrays.sort(segments);
+            // 每个ffmpeg分到的编码线程数，所有段合起来大约占满线程池对应的核数
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / transcodeExecutor.getMaxPoolSize());
+            List<File> encodedSegments = new ArrayList<>(segments.length);
+            for (int i = 0; i < segments.length; i++) {
+                File segment = segments[i];
+                File encoded = new File(directory, String.format("encoded_%05d.mp4", i));
+                File logFile = new File(directory, String.format("encode_%05d.log", i));
+                encodedSegments.add(encoded);
+                futures.add(transcodeExecutor.submit(() -> {
+                    FfmpegUtil.run(Arrays.asList("-i", segment.getAbsolutePath(), "-an", "-c:v", "libx264", "-preset", "veryfast",
+                            "-pix_fmt", "yuv420p", "-threads", String.valueOf(threads), encoded.getAbsolutePath()), logFile, timeoutMinutes);
+                    return null;
+                }));
+            }
+            File audio = new File(directory, "audio.m4a");
+            if (hasAudio) {
+                futures.add(transcodeExecutor.submit(() -> {
+                    FfmpegUtil.run(Arrays.asList("-i", source.getAbsolutePath(), "-vn", "-c:a", "aac", "-b:a", "128k",
+                            audio.getAbsolutePath()), new File(directory, "audio.log"), timeoutMinutes);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            StringBuilder list = new StringBuilder();
+            for (File encoded : encodedSegments) {
+                list.append("file '").append(encoded.getAbsolutePath().replace("'", "'\\''")).append("'\n");
+            }
+            File listFile = new File(directory, "list.txt");
+            Files.write(listFile.toPath(), list.toString().getBytes(StandardCharsets.UTF_8));
+            List<String> arguments = new ArrayList<>(Arrays.asList("-f", "concat", "-safe", "0", "-i", listFile.getAbsolutePath()));
+            if (hasAudio) {
+                arguments.addAll(Arrays.asList("-i", audio.getAbsolutePath(), "-map", "0:v", "-map", "1:a"));
+            }
+            arguments.addAll(Arrays.asList("-c", "copy", "-movflags", "+faststart", "-f", "mp4", target.getAbsolutePath()));
+            FfmpegUtil.run(arguments, new File(directory, "concat.log"), timeoutMinutes);
+            log.info("分段并行转码完成，分段数" + segments.length);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("分段转码失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("分段转码被中断", e);
+        } catch (Exception e) {
+            throw new RuntimeException("分段转码失败", e);
+        } finally {
+            // 失败时取消尚未执行的分段，避免继续占用线程池
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            if (workDirectory != null) {
+                FileUtil.del(workDirectory);
+            }
+        }
+    }
+}
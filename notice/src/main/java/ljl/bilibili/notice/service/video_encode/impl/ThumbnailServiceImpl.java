@@ -0,0 +1,119 @@
+package ljl.bilibili.notice.service.video_encode.impl;
+
+import cn.hutool.core.io.FileUtil;
+import ljl.bilibili.notice.pojo.Thumbnails;
+import ljl.bilibili.notice.service.video_encode.ThumbnailService;
+import ljl.bilibili.notice.service.video_encode.VideoStorageService;
+import ljl.bilibili.notice.util.FfmpegUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * split滤镜把一次解码的画面分成两路：一路按固定间隔取帧缩放后用tile拼成雪碧图，一路用select在均匀分布的时间点取候选封面。
+ * 雪碧图和候选封面都上传后再上传WebVTT索引，索引可访问时其引用的图片都已就绪。
+ */
+@Slf4j
+@Service
+public class ThumbnailServiceImpl implements ThumbnailService {
+    @Resource
+    VideoStorageService videoStorageService;
+    @Value("${thumbnail.url-prefix:https://labilibili.com/video-cover/}")
+    private String urlPrefix;
+    @Value("${thumbnail.candidates:5}")
+    private int candidates;
+    @Value("${thumbnail.interval-seconds:5}")
+    private int intervalSeconds;
+    @Value("${thumbnail.width:160}")
+    private int width;
+    @Value("${thumbnail.height:90}")
+    private int height;
+    @Value("${thumbnail.columns:10}")
+    private int columns;
+    @Value("${thumbnail.rows:10}")
+    private int rows;
+    @Value("${thumbnail.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Override
+    public Thumbnails generate(String objectName, String source, int durationSeconds) {
+        File workDirectory = null;
+        try {
+            workDirectory = Files.createTempDirectory(".thumbs").toFile();
+            int duration = Math.max(durationSeconds, 1);
+            double step = (double) duration / candidates;
+            // 第一张取在step/2处，避开片头的黑场
+            String select = "select='isnan(prev_selected_t)*gte(t," + step / 2 + ")+gte(t-prev_selected_t," + step + ")'";
+            String filter = "[0:v]split=2[s][c];"
+                    + "[s]fps=1/" + intervalSeconds
+                    + ",scale=" + width + ":" + height + ":force_original_aspect_ratio=decrease"
+                    + ",pad=" + width + ":" + height + ":(ow-iw)/2:(oh-ih)/2"
+                    + ",tile=" + columns + "x" + rows + "[sprite];"
+                    + "[c]" + select + ",scale=-2:720[cover]";
+            List<String> arguments = new ArrayList<>(Arrays.asList("-i", source, "-an", "-filter_complex", filter,
+                    "-map", "[sprite]", "-q:v", "5", new File(workDirectory, "sprite_%03d.jpg").getAbsolutePath(),
+                    "-map", "[cover]", "-vsync", "vfr", "-frames:v", String.valueOf(candidates), "-q:v", "2",
+                    new File(workDirectory, "cover_%02d.jpg").getAbsolutePath()));
+            FfmpegUtil.run(arguments, new File(workDirectory, "ffmpeg.log"), timeoutMinutes);
+            String prefix = "thumbs/" + objectName + "/";
+            List<String> coverUrls = new ArrayList<>();
+            for (int i = 1; i <= candidates; i++) {
+                File cover = new File(workDirectory, String.format("cover_%02d.jpg", i));
+                if (cover.exists()) {
+                    videoStorageService.uploadCover(prefix + cover.getName(), cover, "image/jpeg");
+                    coverUrls.add(urlPrefix + prefix + cover.getName());
+                }
+            }
+            int sheets = 0;
+            for (File sprite = new File(workDirectory, String.format("sprite_%03d.jpg", sheets + 1)); sprite.exists();
+                 sprite = new File(workDirectory, String.format("sprite_%03d.jpg", sheets + 1))) {
+                videoStorageService.uploadCover(prefix + sprite.getName(), sprite, "image/jpeg");
+                sheets++;
+            }
+            File vtt = new File(workDirectory, "preview.vtt");
+            Files.write(vtt.toPath(), buildIndex(duration, sheets).getBytes(StandardCharsets.UTF_8));
+            videoStorageService.uploadCover(prefix + vtt.getName(), vtt, "text/vtt");
+            log.info("缩略图生成完成：" + objectName + "，候选封面" + coverUrls.size() + "张，雪碧图" + sheets + "张");
+            return new Thumbnails().setCoverUrls(coverUrls).setPreviewUrl(urlPrefix + prefix + vtt.getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("生成缩略图被中断", e);
+        } catch (Exception e) {
+            throw new RuntimeException("生成缩略图失败", e);
+        } finally {
+            if (workDirectory != null) {
+                FileUtil.del(workDirectory);
+            }
+        }
+    }
+
+    /**
+     * 每个时间段对应雪碧图中的一格，图片地址相对于索引文件，用#xywh指定格子的位置
+     */
+    private String buildIndex(int duration, int sheets) {
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+        int perSheet = columns * rows;
+        for (int i = 0; (long) i * intervalSeconds < duration && i < sheets * perSheet; i++) {
+            int start = i * intervalSeconds;
+            int end = Math.min(start + intervalSeconds, duration);
+            int cell = i % perSheet;
+            vtt.append('\n').append(timestamp(start)).append(" --> ").append(timestamp(end)).append('\n')
+                    .append(String.format("sprite_%03d.jpg", i / perSheet + 1))
+                    .append("#xywh=").append(cell % columns * width).append(',').append(cell / columns * height)
+                    .append(',').append(width).append(',').append(height).append('\n');
+        }
+        return vtt.toString();
+    }
+
+    private static String timestamp(int seconds) {
+        return String.format("%02d:%02d:%02d.000", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,340 @@
+package ljl.bilibili.notice.service.video_encode.impl;
+
+import cn.hutool.core.io.FileUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import ljl.bilibili.client.pojo.UploadVideo;
+import ljl.bilibili.entity.notice.dynamic.Dynamic;
+import ljl.bilibili.entity.video.video_production.upload.Video;
+import ljl.bilibili.mapper.notice.dynamic.DynamicMapper;
+import ljl.bilibili.mapper.video.video_production.upload.VideoMapper;
+import ljl.bilibili.notice.service.send_notice.impl.SendDBChangeServiceImpl;
+import ljl.bilibili.notice.service.video_encode.HlsPackagingService;
+import ljl.bilibili.notice.service.video_encode.ParallelTranscodeService;
+import ljl.bilibili.notice.pojo.Thumbnails;
+import ljl.bilibili.notice.pojo.VideoProbe;
+import ljl.bilibili.notice.service.video_encode.VideoEncodeService;
+import ljl.bilibili.notice.service.video_encode.VideoProbeService;
+import ljl.bilibili.notice.service.video_encode.ThumbnailService;
+import ljl.bilibili.notice.service.video_encode.VideoStorageService;
+import ljl.bilibili.notice.util.FfmpegUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ws.schild.jave.*;
+import ws.schild.jave.encode.AudioAttributes;
+import ws.schild.jave.encode.EncodingAttributes;
+import ws.schild.jave.encode.VideoAttributes;
+import ws.schild.jave.info.MultimediaInfo;
+import ws.schild.jave.progress.EncoderProgressListener;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+import static ljl.bilibili.notice.constant.Constant.*;
+/**
+ *视频转码
+ * 负责视频上传后的转码、封面生成、时长计算、格式转换等核心媒体处理流程，确保视频符合播放标准并同步元数据到数据库。
+ * 由转码任务的工作线程调用，异常向上抛出以便任务按退避时间重试。
+ *
+ * 1. 视频获取
+ * 先由 VideoProbeService 用范围请求只读取 MP4/MOV 的 moov 盒子得到时长、编码和分辨率；已是 H.264 且只有一个需要完整解码的环节（缩略图或HLS打包）时不下载，
+ * ffmpeg 直接按范围请求读取预签名地址，两个环节都开启时仍下载一次到本地，避免从MinIO重复拉取整个文件；moov 在文件末尾的先以流复制重新封装（-movflags +faststart）把 moov 移到文件头部再覆盖原文件，
+ * 浏览器无需拉完整个文件即可起播。
+ * 其他视频通过 VideoStorageService 按分段范围请求直接从 MinIO 下载到临时文件，不再经过视频服务，也不在堆内缓存整个文件。
+ *
+ * 2. 缩略图
+ * 通过 ThumbnailService 一次解码生成若干候选封面、拖动预览雪碧图和 WebVTT 索引，地址写入 Video 表的 cover_candidates 和 preview_url 字段；
+ * 视频无封面时取第一张候选封面，更新 Video 表和 Dynamic 表的封面地址。缩略图失败不影响任务，两个字段留空；
+ * 关闭缩略图或没有候选封面时退回到用 ScreenExtractor 截取第 1000ms 处画面。
+ *
+ * 3. 时长计算
+ * 将视频时长格式化为 mm:ss，写入 Video 表并发送数据库变更通知（同步到 ES）。
+ *
+ * 4. 格式转换
+ * 非 H.264 编码的视频需要转码，否则浏览器中只有声音没有图像；长视频分段并行转码，短视频整条转码。
+ * 转码后通过 VideoStorageService.uploadVideo(...) 从磁盘分片上传新视频至 MinIO，覆盖原文件；
+ * 覆盖（包括moov前置）前由 keepOriginal 为登记过秒传指纹的文件保留原始副本，秒传校验读取副本。
+ *
+ * 5. 多码率HLS打包
+ * 通过 HlsPackagingService 一次解码生成 360p/720p/1080p（不超过源分辨率）的切片和主播放列表，上传至 MinIO 的 hls/{视频文件名}/ 目录，
+ * 主播放列表地址写入 Video 表的 manifest_url 字段。
+ *
+ * 6. 同一文件的其他视频
+ * 转码期间秒传复用同一文件的视频不会再入队，还没有时长的沿用本次的时长、封面、预览图和HLS地址，并同步到 ES。
+ *
+ * 资源清理：处理结束后删除整个临时目录，释放磁盘空间。
+ *
+ * 中断：转码任务的租约被其他节点接管时处理线程会被中断，ffmpeg随之结束；每次写MinIO或数据库前再检查一次中断，被中断后不再覆盖视频文件。
+ */
+@Service
+@Slf4j
+public class VideoEncodeServiceImpl implements VideoEncodeService {
+    @Autowired
+    VideoStorageService videoStorageService;
+    @Autowired
+    HlsPackagingService hlsPackagingService;
+    @Value("${hls.enabled:true}")
+    boolean hlsEnabled;
+    @Autowired
+    ParallelTranscodeService parallelTranscodeService;
+    @Value("${transcode.parallel.enabled:true}")
+    boolean parallelTranscodeEnabled;
+    @Value("${transcode.parallel.min-seconds:60}")
+    int parallelMinSeconds;
+    @Autowired
+    VideoProbeService videoProbeService;
+    @Value("${probe.enabled:true}")
+    boolean probeEnabled;
+    @Value("${probe.url-expiry-minutes:180}")
+    int probeUrlExpiryMinutes;
+    @Value("${transcode.timeout-minutes:60}")
+    long timeoutMinutes;
+    @Autowired
+    ThumbnailService thumbnailService;
+    @Value("${thumbnail.enabled:true}")
+    boolean thumbnailEnabled;
+    @Autowired
+    VideoMapper videoMapper;
+    @Autowired
+    SendDBChangeServiceImpl sendDBChangeService;
+    @Autowired
+    DynamicMapper dynamicMapper;
+    /**
+     *转码视频、如果视频无封面则截取封面、获取视频时长
+     */
+    @Override
+    public void encode(UploadVideo uploadVideo, BiConsumer<String, Integer> progress) throws Exception {
+        String filePath = null;
+        try {
+            String objectName = uploadVideo.getUrl().substring(uploadVideo.getUrl().lastIndexOf("/") + 1);
+            filePath = Files.createTempDirectory(".tmp").toString();
+            Video updateVideo=new Video().setId(uploadVideo.getVideoId());
+            String videoFileName="video";
+            // 创建临时目录存储视频和封面文件（避免永久占用磁盘）
+            File file = new File(filePath, videoFileName);
+            String coverFileName = uploadVideo.getVideoName() + UUID.randomUUID().toString().substring(0, 8) + ".jpg";
+            File coverFile = new File(filePath, coverFileName);
+            // 先用范围请求只读取moov，已是h264的视频不需要转码，ffmpeg直接按范围请求读取预签名地址，不下载整个文件
+            VideoProbe probe = probeEnabled ? videoProbeService.probe(objectName) : null;
+            MultimediaObject multimediaObject;
+            String source;
+            int totalLength;
+            int height;
+            boolean hasAudio;
+            String decoder;
+            if (probe != null && probe.isH264()) {
+                source = videoStorageService.presignedUrl(objectName, probeUrlExpiryMinutes);
+                multimediaObject = new MultimediaObject(new URL(source));
+                totalLength = probe.getDurationSeconds();
+                height = probe.getHeight();
+                hasAudio = probe.isHasAudio();
+                decoder = "h264";
+                // 缩略图和HLS打包都要完整解码一遍，都开启时直接读地址会从MinIO拉两遍整个文件，不如下载一次
+                boolean multiPass = thumbnailEnabled && hlsEnabled;
+                if (probe.isMoovAtFront() && multiPass) {
+                    progress.accept(STAGE_DOWNLOAD, 0);
+                    videoStorageService.downloadVideo(objectName, file);
+                    source = file.getAbsolutePath();
+                    multimediaObject = new MultimediaObject(file);
+                } else if (!probe.isMoovAtFront()) {
+                    // moov在文件末尾时浏览器要拉完整个文件才能起播，只重新封装把moov移到文件头部，不重新编码
+                    progress.accept(STAGE_REMUX, 5);
+                    File faststart = new File(filePath, "faststart.mp4");
+                    FfmpegUtil.run(Arrays.asList("-i", source, "-c", "copy", "-movflags", "+faststart", "-f", "mp4",
+                            faststart.getAbsolutePath()), new File(filePath, "faststart.log"), timeoutMinutes);
+                    checkInterrupted();
+                    videoStorageService.keepOriginal(objectName);
+                    videoStorageService.uploadVideo(objectName, faststart, "video/mp4");
+                    log.info("moov前置完成：" + objectName);
+                    // 后续截封面和HLS打包直接读本地的新文件
+                    source = faststart.getAbsolutePath();
+                    multimediaObject = new MultimediaObject(faststart);
+                }
+            } else {
+                //直接从minio分段下载视频到临时文件
+                progress.accept(STAGE_DOWNLOAD, 0);
+                videoStorageService.downloadVideo(objectName, file);
+                multimediaObject = new MultimediaObject(file);
+                MultimediaInfo info = multimediaObject.getInfo();
+                source = file.getAbsolutePath();
+                totalLength = Math.toIntExact(info.getDuration()) / 1000;
+                height = info.getVideo().getSize().getHeight();
+                hasAudio = info.getAudio() != null;
+                decoder = info.getVideo().getDecoder();
+            }
+            checkInterrupted();
+            String cover = null;
+            if (thumbnailEnabled) {
+                // 一次解码生成候选封面和拖动预览雪碧图，无封面的视频取第一张候选封面；
+                // 缩略图不是必需的，失败时只记录日志，不让整个任务重试一遍昂贵的转码
+                progress.accept(STAGE_THUMBNAIL, 10);
+                try {
+                    Thumbnails thumbnails = thumbnailService.generate(objectName, source, totalLength);
+                    updateVideo.setPreviewUrl(thumbnails.getPreviewUrl()).setCoverCandidates(String.join(",", thumbnails.getCoverUrls()));
+                    if (Boolean.FALSE.equals(uploadVideo.getHasCover()) && !thumbnails.getCoverUrls().isEmpty()) {
+                        cover = thumbnails.getCoverUrls().get(0);
+                    }
+                } catch (Exception e) {
+                    // 缩略图失败可以忽略，被中断不能
+                    checkInterrupted();
+                    log.warn("生成缩略图失败，跳过预览图和候选封面：" + objectName, e);
+                }
+            }
+            if (cover == null && Boolean.FALSE.equals(uploadVideo.getHasCover())) {
+                //如果视频没有封面且没有候选封面
+                progress.accept(STAGE_COVER, 10);
+                String contentType = "image/jpeg";
+                // 从视频中截取一帧（默认第 1000ms 处画面）作为封面：
+                ScreenExtractor screenExtractor = new ScreenExtractor();
+                screenExtractor.renderOneImage(multimediaObject, -1, -1, 1000, coverFile, 1);
+                // 上传封面到 MinIO
+                videoStorageService.uploadCover(coverFileName, coverFile, contentType);
+                String prefixPath="https://labilibili.com/video-cover/";
+                cover=prefixPath+coverFileName;
+            }
+            if (cover != null) {
+                updateVideo.setCover(cover);
+                LambdaUpdateWrapper<Dynamic> wrapper=new LambdaUpdateWrapper<>();
+                wrapper.set(Dynamic::getVideoCover,cover);
+                wrapper.eq(Dynamic::getVideoId,updateVideo.getId());
+                dynamicMapper.update(null,wrapper);
+            }
+            //视频时长
+            String length;
+            Map<String, Object> map = new HashMap<>();
+            if (totalLength / 60 < 1) {
+                if (totalLength % 60 < 10) {
+                    length = "00:0" + totalLength;
+                } else {
+                    length = "00:" + totalLength;
+                }
+            } else {
+                if (totalLength / 60 < 10) {
+                    if(totalLength%60<10){
+                        length = "0" + totalLength / 60 + ":0" + totalLength % 60;
+                    }else {
+                        length = "0" + totalLength / 60 + ":" + totalLength % 60;
+                    }
+                } else {
+                    length = totalLength / 60 + ":" + totalLength % 60;
+                }
+            }
+            // 同步时长到数据库并发送变更通知
+            checkInterrupted();
+            map.put(OPERATION_TYPE, OPERATION_TYPE_UPDATE);
+            map.put(TABLE_NAME, VIDEO_TABLE_NAME);
+            // 视频时长length
+            map.put(VIDEO_LENGTH, length);
+            map.put(VIDEO_ID, uploadVideo.getVideoId());
+            // 发送数据库变更通知（用于同步到 ES 等）
+            sendDBChangeService.sendDBChangeNotice(map);
+            videoMapper.updateById(updateVideo.setLength(length));
+            String rightFormat = "h264";
+            //不符合h.264的mp4文件需要转码否则浏览器中只有声音没有图像
+            if (!rightFormat.equals(decoder)) {
+                progress.accept(STAGE_TRANSCODE, 20);
+                String contentType = "video/mp4";
+                String outPutForMatType = "mp4";
+                VideoAttributes videoAttributes = new VideoAttributes();
+                String targetFileName = "target";
+                File target = new File(filePath, targetFileName);
+                videoAttributes.setCodec(rightFormat);
+                AudioAttributes audio = new AudioAttributes();
+                EncodingAttributes attrs = new EncodingAttributes();
+                attrs.setOutputFormat(outPutForMatType);
+                attrs.setAudioAttributes(audio);
+                attrs.setVideoAttributes(videoAttributes);
+                // 长视频分段并行转码，短视频分段收益不大，仍整条转码
+                if (parallelTranscodeEnabled && totalLength >= parallelMinSeconds) {
+                    parallelTranscodeService.transcodeToH264(file, target, hasAudio);
+                } else {
+                    Encoder encoder = new Encoder();
+                    encoder.encode(multimediaObject, target, attrs, new EncoderProgressListener() {
+                        @Override
+                        public void sourceInfo(MultimediaInfo info) {
+                        }
+
+                        @Override
+                        public void progress(int permil) {
+                            // JAVE读取ffmpeg输出时不响应中断，在进度回调里结束ffmpeg
+                            if (Thread.currentThread().isInterrupted()) {
+                                encoder.abortEncoding();
+                            }
+                        }
+
+                        @Override
+                        public void message(String message) {
+                        }
+                    });
+                }
+                log.info("转码成功");
+                // 将新视频从磁盘分片上传到MinIO存储
+                progress.accept(STAGE_UPLOAD, 60);
+                checkInterrupted();
+                videoStorageService.keepOriginal(objectName);
+                videoStorageService.uploadVideo(objectName, target, contentType);
+                log.info("上传新视频成功");
+            }
+            //打包多码率HLS，播放器按带宽选择码率，只拉取需要的切片
+            if (hlsEnabled) {
+                progress.accept(STAGE_HLS, 70);
+                String manifestUrl = hlsPackagingService.packageHls(objectName, source, height, hasAudio);
+                checkInterrupted();
+                updateVideo.setManifestUrl(manifestUrl);
+                videoMapper.updateById(new Video().setId(uploadVideo.getVideoId()).setManifestUrl(manifestUrl));
+            }
+            shareWithSameFile(uploadVideo, updateVideo);
+        } finally {
+            if (filePath != null) {
+                FileUtil.del(filePath);
+            }
+        }
+    }
+
+    /**
+     * 转码期间秒传复用同一文件的视频没有单独的转码任务，还没有时长的沿用本次的处理结果
+     */
+    private void shareWithSameFile(UploadVideo uploadVideo, Video result) throws JsonProcessingException {
+        LambdaQueryWrapper<Video> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Video::getId, Video::getCover)
+                .eq(Video::getUrl, uploadVideo.getUrl())
+                .ne(Video::getId, uploadVideo.getVideoId())
+                .isNull(Video::getLength);
+        for (Video sameVideo : videoMapper.selectList(wrapper)) {
+            Video update = new Video().setId(sameVideo.getId()).setLength(result.getLength())
+                    .setManifestUrl(result.getManifestUrl()).setPreviewUrl(result.getPreviewUrl())
+                    .setCoverCandidates(result.getCoverCandidates());
+            if (sameVideo.getCover() == null && result.getCover() != null) {
+                update.setCover(result.getCover());
+                LambdaUpdateWrapper<Dynamic> dynamicWrapper = new LambdaUpdateWrapper<>();
+                dynamicWrapper.set(Dynamic::getVideoCover, result.getCover()).eq(Dynamic::getVideoId, sameVideo.getId());
+                dynamicMapper.update(null, dynamicWrapper);
+            }
+            videoMapper.updateById(update);
+            Map<String, Object> map = new HashMap<>();
+            map.put(OPERATION_TYPE, OPERATION_TYPE_UPDATE);
+            map.put(TABLE_NAME, VIDEO_TABLE_NAME);
+            map.put(VIDEO_LENGTH, result.getLength());
+            map.put(VIDEO_ID, sameVideo.getId());
+            sendDBChangeService.sendDBChangeNotice(map);
+        }
+    }
+
+    /**
+     * 租约被接管后处理线程会被中断，不再写MinIO和数据库
+     */
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("转码任务已被中断");
+        }
+    }
+}
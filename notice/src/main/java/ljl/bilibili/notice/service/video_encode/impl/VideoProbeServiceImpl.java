@@ -0,0 +1,161 @@
+package ljl.bilibili.notice.service.video_encode.impl;
+
+import ljl.bilibili.notice.pojo.VideoProbe;
+import ljl.bilibili.notice.service.video_encode.VideoProbeService;
+import ljl.bilibili.notice.service.video_encode.VideoStorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 先读文件头部一段，按顶层盒子的长度逐个跳过（跳过mdat时只读下一个盒子的16字节头），找到moov后只读取moov本身。
+ * moov在文件头部时一次请求即可，在文件末尾时一般共三次请求。
+ */
+@Service
+@Slf4j
+public class VideoProbeServiceImpl implements VideoProbeService {
+    private static final int BOX_HEADER_SIZE = 16;
+    @Resource
+    VideoStorageService videoStorageService;
+    @Value("${probe.head-bytes:2097152}")
+    private int headBytes;
+    @Value("${probe.max-moov-bytes:33554432}")
+    private long maxMoovBytes;
+
+    @Override
+    public VideoProbe probe(String objectName) {
+        try {
+            long size = videoStorageService.size(objectName);
+            byte[] head = videoStorageService.readRange(objectName, 0, (int) Math.min(headBytes, size));
+            if (head.length < 8 || !"ftyp".equals(type(head, 4))) {
+                return null;
+            }
+            long offset = 0;
+            boolean seenMdat = false;
+            while (offset + 8 <= size) {
+                byte[] header = offset + BOX_HEADER_SIZE <= head.length ? head
+                        : videoStorageService.readRange(objectName, offset, (int) Math.min(BOX_HEADER_SIZE, size - offset));
+                int base = header == head ? (int) offset : 0;
+                long boxSize = ByteBuffer.wrap(header, base, 4).getInt() & 0xFFFFFFFFL;
+                String type = type(header, base + 4);
+                int headerSize = 8;
+                if (boxSize == 1) {
+                    if (header.length < base + 16) {
+                        return null;
+                    }
+                    boxSize = ByteBuffer.wrap(header, base + 8, 8).getLong();
+                    headerSize = 16;
+                } else if (boxSize == 0) {
+                    boxSize = size - offset;
+                }
+                if (boxSize < headerSize || offset + boxSize > size) {
+                    return null;
+                }
+                if ("moov".equals(type)) {
+                    if (boxSize > maxMoovBytes) {
+                        return null;
+                    }
+                    ByteBuffer moov = offset + boxSize <= head.length
+                            ? ByteBuffer.wrap(head, (int) offset, (int) boxSize).slice()
+                            : ByteBuffer.wrap(videoStorageService.readRange(objectName, offset, (int) boxSize));
+                    VideoProbe probe = new VideoProbe().setMoovAtFront(!seenMdat);
+                    parseMoov(moov, headerSize, (int) boxSize, probe);
+                    return probe.getVideoCodec() == null ? null : probe;
+                }
+                if ("mdat".equals(type)) {
+                    seenMdat = true;
+                }
+                offset += boxSize;
+            }
+            return null;
+        } catch (Exception e) {
+            log.warn("解析视频元数据失败：" + objectName, e);
+            return null;
+        }
+    }
+
+    private void parseMoov(ByteBuffer buffer, int start, int end, VideoProbe probe) {
+        for (int offset = start; offset + 8 <= end; ) {
+            int boxSize = buffer.getInt(offset);
+            String type = type(buffer, offset + 4);
+            if (boxSize < 8 || offset + boxSize > end) {
+                return;
+            }
+            if ("mvhd".equals(type)) {
+                int version = buffer.get(offset + 8);
+                long timescale;
+                long duration;
+                if (version == 1) {
+                    timescale = buffer.getInt(offset + 28) & 0xFFFFFFFFL;
+                    duration = buffer.getLong(offset + 32);
+                } else {
+                    timescale = buffer.getInt(offset + 20) & 0xFFFFFFFFL;
+                    duration = buffer.getInt(offset + 24) & 0xFFFFFFFFL;
+                }
+                if (timescale > 0) {
+                    probe.setDurationSeconds((int) (duration / timescale));
+                }
+            } else if ("trak".equals(type)) {
+                parseTrak(buffer, offset + 8, offset + boxSize, probe);
+            }
+            offset += boxSize;
+        }
+    }
+
+    /**
+     * 依次进入trak/mdia/minf/stbl，从hdlr取轨道类型，从stsd的第一个样本描述取编码格式和宽高
+     */
+    private void parseTrak(ByteBuffer buffer, int start, int end, VideoProbe probe) {
+        String handler = null;
+        String format = null;
+        int width = 0;
+        int height = 0;
+        int offset = start;
+        int containerEnd = end;
+        while (offset + 8 <= containerEnd) {
+            int boxSize = buffer.getInt(offset);
+            String type = type(buffer, offset + 4);
+            if (boxSize < 8 || offset + boxSize > containerEnd) {
+                break;
+            }
+            if ("mdia".equals(type) || "minf".equals(type) || "stbl".equals(type)) {
+                containerEnd = offset + boxSize;
+                offset += 8;
+                continue;
+            }
+            // MOV的minf中还有一个数据引用的hdlr，只取mdia下的第一个
+            if ("hdlr".equals(type) && boxSize >= 20 && handler == null) {
+                handler = type(buffer, offset + 16);
+            } else if ("stsd".equals(type) && boxSize >= 24) {
+                int entry = offset + 16;
+                format = type(buffer, entry + 4);
+                if (entry + 36 <= offset + boxSize) {
+                    width = buffer.getShort(entry + 32) & 0xFFFF;
+                    height = buffer.getShort(entry + 34) & 0xFFFF;
+                }
+            }
+            offset += boxSize;
+        }
+        if ("vide".equals(handler) && probe.getVideoCodec() == null) {
+            probe.setVideoCodec(format).setWidth(width).setHeight(height);
+        } else if ("soun".equals(handler)) {
+            probe.setHasAudio(true);
+        }
+    }
+
+    private static String type(byte[] bytes, int offset) {
+        return new String(bytes, offset, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String type(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
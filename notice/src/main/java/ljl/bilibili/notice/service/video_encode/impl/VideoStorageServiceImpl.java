@@ -0,0 +1,149 @@
+package ljl.bilibili.notice.service.video_encode.impl;
+
+import io.minio.ComposeObjectArgs;
+import io.minio.ComposeSource;
+import io.minio.GetObjectArgs;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.UploadObjectArgs;
+import io.minio.http.Method;
+import ljl.bilibili.notice.service.video_encode.VideoStorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static ljl.bilibili.notice.constant.Constant.*;
+
+/**
+ * 下载时每段单独发起范围请求，直接从响应流写入文件通道；上传用uploadObject，SDK按文件长度决定是否分片上传，并用RandomAccessFile读取文件
+ */
+@Service
+public class VideoStorageServiceImpl implements VideoStorageService {
+    @Resource
+    MinioClient minioClient;
+    /**
+     * 指纹索引由视频服务以字符串哈希写入
+     */
+    @Resource
+    StringRedisTemplate stringRedisTemplate;
+    @Value("${minio.part-size:16777216}")
+    private long partSize;
+
+    @Override
+    public void downloadVideo(String objectName, File target) {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = minioClient.statObject(StatObjectArgs.builder().bucket("video").object(objectName).build()).size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(partSize, size - position);
+                try (InputStream in = minioClient.getObject(GetObjectArgs.builder().bucket("video").object(objectName).offset(position).length(length).build());
+                     ReadableByteChannel source = Channels.newChannel(in)) {
+                    long written = 0;
+                    while (written < length) {
+                        long count = channel.transferFrom(source, position + written, length - written);
+                        if (count <= 0) {
+                            break;
+                        }
+                        written += count;
+                    }
+                    if (written != length) {
+                        throw new IllegalStateException("下载视频不完整：" + objectName);
+                    }
+                }
+                position += length;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("下载视频失败", e);
+        }
+    }
+
+    @Override
+    public long size(String objectName) {
+        try {
+            return minioClient.statObject(StatObjectArgs.builder().bucket("video").object(objectName).build()).size();
+        } catch (Exception e) {
+            throw new RuntimeException("获取视频大小失败", e);
+        }
+    }
+
+    @Override
+    public byte[] readRange(String objectName, long offset, int length) {
+        try (InputStream in = minioClient.getObject(GetObjectArgs.builder().bucket("video").object(objectName).offset(offset).length((long) length).build())) {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = in.read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new IllegalStateException("读取视频不完整：" + objectName);
+                }
+                read += count;
+            }
+            return bytes;
+        } catch (Exception e) {
+            throw new RuntimeException("读取视频失败", e);
+        }
+    }
+
+    @Override
+    public String presignedUrl(String objectName, int expiryMinutes) {
+        try {
+            return minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder().method(Method.GET)
+                    .bucket("video").object(objectName).expiry(expiryMinutes, TimeUnit.MINUTES).build());
+        } catch (Exception e) {
+            throw new RuntimeException("生成视频地址失败", e);
+        }
+    }
+
+    @Override
+    public void uploadVideo(String objectName, File file, String contentType) {
+        upload("video", objectName, file, contentType);
+    }
+
+    @Override
+    public void uploadCover(String objectName, File file, String contentType) {
+        upload("video-cover", objectName, file, contentType);
+    }
+
+    /**
+     * 先复制再登记，登记后才会覆盖原文件；重试时已登记过的不再复制，此时的文件可能已被覆盖
+     */
+    @Override
+    public void keepOriginal(String objectName) {
+        Object fingerprint = stringRedisTemplate.opsForHash().get(VIDEO_FINGERPRINT_OBJECT_KEY, objectName);
+        if (fingerprint == null || stringRedisTemplate.opsForHash().hasKey(VIDEO_FINGERPRINT_ORIGINAL_KEY, fingerprint)) {
+            return;
+        }
+        String originalName = ORIGINAL_VIDEO_PREFIX + objectName;
+        try {
+            // compose支持超过5GB的对象，单个源时等同于服务端复制
+            minioClient.composeObject(ComposeObjectArgs.builder().bucket("video").object(originalName)
+                    .sources(Collections.singletonList(ComposeSource.builder().bucket("video").object(objectName).build()))
+                    .build());
+        } catch (Exception e) {
+            throw new RuntimeException("保留原始视频失败", e);
+        }
+        stringRedisTemplate.opsForHash().put(VIDEO_FINGERPRINT_ORIGINAL_KEY, fingerprint, originalName);
+    }
+
+    private void upload(String bucket, String objectName, File file, String contentType) {
+        try {
+            minioClient.uploadObject(UploadObjectArgs.builder().bucket(bucket).object(objectName)
+                    .filename(file.getAbsolutePath())
+                    .contentType(contentType)
+                    .build());
+        } catch (Exception e) {
+            throw new RuntimeException("上传失败", e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ljl.bilibili.notice.util;
+
+import cn.hutool.core.io.FileUtil;
+import ws.schild.jave.process.ffmpeg.DefaultFFMPEGLocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 直接调用JAVE自带的ffmpeg执行JAVE的Encoder表达不了的命令（分段、拼接、多路输出等）
+ */
+public class FfmpegUtil {
+    private static final String FFMPEG_PATH = new DefaultFFMPEGLocator().getExecutablePath();
+
+    /**
+     * 执行ffmpeg并等待结束，输出写入logFile，超时或退出码非0时抛出异常；等待时线程被中断则结束ffmpeg进程
+     * @param arguments 不含ffmpeg可执行文件本身的参数
+     */
+    public static void run(List<String> arguments, File logFile, long timeoutMinutes) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(arguments.size() + 3);
+        command.add(FFMPEG_PATH);
+        command.add("-y");
+        command.add("-hide_banner");
+        command.addAll(arguments);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        boolean exited;
+        try {
+            exited = process.waitFor(timeoutMinutes, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+        if (!exited) {
+            process.destroyForcibly();
+            throw new IllegalStateException("ffmpeg执行超时");
+        }
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("ffmpeg执行失败，退出码" + process.exitValue() + "：" + FileUtil.readUtf8String(logFile));
+        }
+    }
+}
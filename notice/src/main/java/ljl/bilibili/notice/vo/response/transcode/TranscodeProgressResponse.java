@@ -0,0 +1,37 @@
+package ljl.bilibili.notice.vo.response.transcode;
+
+import io.swagger.annotations.ApiModelProperty;
+import ljl.bilibili.entity.video.video_production.transcode.TranscodeJob;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+@Data
+@Accessors(chain = true)
+public class TranscodeProgressResponse {
+    @ApiModelProperty("视频id")
+    private Integer videoId;
+    @ApiModelProperty("0排队中 1转码中 2已完成 3已失败")
+    private Integer status;
+    @ApiModelProperty("当前阶段")
+    private String stage;
+    @ApiModelProperty("进度百分比")
+    private Integer progress;
+    @ApiModelProperty("已尝试次数")
+    private Integer attempts;
+    @ApiModelProperty("下次重试时间")
+    private LocalDateTime nextRunTime;
+    @ApiModelProperty("最近一次失败原因")
+    private String error;
+
+    public TranscodeProgressResponse(TranscodeJob job) {
+        this.videoId = job.getVideoId();
+        this.status = job.getStatus();
+        this.stage = job.getStage();
+        this.progress = job.getProgress();
+        this.attempts = job.getAttempts();
+        this.nextRunTime = job.getNextRunTime();
+        this.error = job.getError();
+    }
+}
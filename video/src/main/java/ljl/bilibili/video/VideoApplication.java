@@ -6,12 +6,14 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableDiscoveryClient
 @EnableFeignClients(basePackages = "ljl.bilibili.client")
 @MapperScan(basePackages = {"ljl.bilibili.mapper","ljl.bilibili.video.mapper"})
 @ComponentScan(basePackages = "ljl.*")
+@EnableScheduling
 public class VideoApplication {
     public static void main(String[] args) {
         SpringApplication.run(VideoApplication.class,args);
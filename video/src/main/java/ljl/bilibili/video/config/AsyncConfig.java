@@ -0,0 +1,59 @@
+package ljl.bilibili.video.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步线程池配置类
+ */
+@Configuration
+public class AsyncConfig {
+    /**
+     * 截取封面的有界线程池，队列满时直接拒绝，由调用方把封面标记为生成失败，不占用上传请求线程
+     */
+    @Bean(name = "coverExecutor")
+    public ThreadPoolTaskExecutor coverExecutor(@Value("${upload.cover.pool-size:2}") int poolSize,
+                                                @Value("${upload.cover.queue-capacity:32}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("cover-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+    /**
+     * 事务提交后中继发件箱事件的线程池，队列满时拒绝，事件留在表中由定时任务补发
+     */
+    @Bean(name = "outboxExecutor")
+    public ThreadPoolTaskExecutor outboxExecutor(@Value("${outbox.pool-size:4}") int poolSize,
+                                                 @Value("${outbox.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("outbox-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+    /**
+     * 首页缓存后台刷新的线程池，队列满时本次不刷新，继续使用旧值
+     */
+    @Bean(name = "feedRefreshExecutor")
+    public ThreadPoolTaskExecutor feedRefreshExecutor(@Value("${feed.cache.refresh-pool-size:2}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("feed-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,69 @@
+package ljl.bilibili.video.config;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioClient;
+import io.minio.errors.*;
+import io.minio.messages.ListPartsResult;
+import io.minio.messages.Part;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将MinioClient中受保护的S3分片上传接口（初始化、上传分片、列出分片、合并、取消）暴露出来
+ */
+public class CustomMinioClient extends MinioClient {
+
+    public CustomMinioClient(MinioClient client) {
+        super(client);
+    }
+
+    /**
+     * 初始化分片上传，返回uploadId
+     */
+    public String initMultipartUpload(String bucket, String object, String contentType) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+        Multimap<String, String> headers = HashMultimap.create();
+        headers.put("Content-Type", contentType);
+        return createMultipartUpload(bucket, null, object, headers, null).result().uploadId();
+    }
+
+    /**
+     * 上传一个分片，data可以是RandomAccessFile、BufferedInputStream或byte[]，返回该分片的ETag
+     */
+    public String uploadMultipartPart(String bucket, String object, String uploadId, int partNumber, Object data, int length) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+        return uploadPart(bucket, null, object, data, length, uploadId, partNumber, null, null).etag();
+    }
+
+    /**
+     * 按分片序号合并所有分片
+     */
+    public void mergeMultipartUpload(String bucket, String object, String uploadId, Part[] parts) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+        completeMultipartUpload(bucket, null, object, uploadId, parts, null, null);
+    }
+
+    /**
+     * 分页列出已上传的全部分片
+     */
+    public List<Part> listMultipartParts(String bucket, String object, String uploadId) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+        List<Part> parts = new ArrayList<>();
+        Integer partNumberMarker = null;
+        ListPartsResult result;
+        do {
+            result = listParts(bucket, null, object, 1000, partNumberMarker, uploadId, null, null).result();
+            parts.addAll(result.partList());
+            partNumberMarker = result.nextPartNumberMarker();
+        } while (result.isTruncated());
+        return parts;
+    }
+
+    /**
+     * 取消分片上传，MinIO会清理已上传的分片
+     */
+    public void cancelMultipartUpload(String bucket, String object, String uploadId) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+        abortMultipartUpload(bucket, null, object, uploadId, null, null);
+    }
+}
@@ -15,13 +15,13 @@ public class MinioConfig {
     private String secretKey;
 
     @Bean
-    public MinioClient minioClient() {
+    public CustomMinioClient minioClient() {
         try {
             MinioClient minioClient = MinioClient.builder()
                     .endpoint(endpoint)
                     .credentials(accessKey, secretKey)
                     .build();
-            return minioClient;
+            return new CustomMinioClient(minioClient);
         } catch (Exception e){
             e.printStackTrace();
         }
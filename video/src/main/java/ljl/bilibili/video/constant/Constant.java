@@ -1,20 +1,12 @@
 package ljl.bilibili.video.constant;
 
-import ljl.bilibili.video.pojo.UploadPart;
-import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 public class Constant {
-    public static final String HAS_PLAY="已经新增过播放记录了";
     public static final String SQL="limit";
     public static final String LIMIT="12";
     public static final String HEADERS_VALUES="attachment; filename=\"your-filename.ext\"";
     public static final String IMAGE_TYPE="images/jpeg";
     public static final String VIDEO_TYPE="video/mp4";
+    public static final String JPEG_TYPE="image/jpeg";
     public static final String TABLE_NAME="table";
     public static final String VIDEO_TABLE_NAME="video";
     public static final String VIDEO_URL="url";
@@ -25,9 +17,131 @@ public class Constant {
     public static final String OPERATION_TYPE_ADD="add";
     public static final String OPERATION_TYPE_DELETE="delete";
     public static final String OPERATION_TYPE_UPDATE="update";
-    public static final Map<Integer, List<FirstPageVideoResponse>> map=new ConcurrentHashMap<>();
     /**
-     * 文件标识符-上传分片信息（一个文件对应一个）
+     * 上传会话在redis中的键前缀，后接文件标识符
+     */
+    public static final String UPLOAD_PART_KEY="upload:part:";
+    public static final String UPLOAD_ATTRIBUTE_KEY="upload:attribute:";
+    /**
+     * 上传会话最后写入时间的有序集合，回收任务按分数找出过期会话
+     */
+    public static final String UPLOAD_ACTIVE_KEY="upload:active";
+    /**
+     * 上传会话属性：封面
+     */
+    public static final String UPLOAD_COVER="cover";
+    /**
+     * 上传会话属性：封面生成状态及其取值
+     */
+    public static final String UPLOAD_COVER_STATE="coverState";
+    public static final String COVER_STATE_PENDING="pending";
+    public static final String COVER_STATE_READY="ready";
+    public static final String COVER_STATE_FAILED="failed";
+    /**
+     * 截取的封面在video-cover桶中的暂存目录，投稿时再复制为正式封面
+     */
+    public static final String COVER_STAGING_PREFIX="staging/";
+    /**
+     * 上传会话属性：合并后的视频文件名、S3分片上传的uploadId（multipart模式）
+     */
+    public static final String UPLOAD_OBJECT_NAME="objectName";
+    public static final String UPLOAD_ID="uploadId";
+    /**
+     * 分片上传模式：compose（每个分片单独存对象再服务端合并）或 multipart（S3原生分片上传）
+     */
+    public static final String UPLOAD_MODE_MULTIPART="multipart";
+    /**
+     * 上传会话属性：预签名直传的分片总数，分片由客户端直接上传到MinIO，会话中不登记分片
+     */
+    public static final String UPLOAD_PRESIGNED_TOTAL="presignedTotal";
+    /**
+     * 上传会话属性前缀：分片的SHA-256摘要，后接分片序号
+     */
+    public static final String UPLOAD_DIGEST_PREFIX="digest:";
+    /**
+     * 上传会话属性：分片已合并（或秒传复用）后的视频文件名，回收时不再处理分片
+     */
+    public static final String UPLOAD_MERGED="merged";
+    /**
+     * 上传会话属性：合并租约（到期时间毫秒数:随机串），合并请求中途宕机后租约过期可由重传最后一个分片的请求接管
+     */
+    public static final String UPLOAD_MERGING="merging";
+    /**
+     * 一个文件的分片数上限，与S3分片上传的part数上限一致
+     */
+    public static final int MAX_CHUNKS=10000;
+    /**
+     * 上传会话属性：秒传命中的已有视频文件名和发给客户端的校验范围（偏移,长度），只保存在服务端，验证通过后才写入merged
+     */
+    public static final String UPLOAD_INSTANT_OBJECT="instantObject";
+    public static final String UPLOAD_INSTANT_CHALLENGE="instantChallenge";
+    /**
+     * 上传会话属性：秒传命中的文件指纹，校验时据此找到保存原始内容的对象
+     */
+    public static final String UPLOAD_INSTANT_FINGERPRINT="instantFingerprint";
+    /**
+     * 秒传校验时要求客户端对文件中随机一段计算SHA-256，这一段的最大长度
+     */
+    public static final int INSTANT_PROOF_LENGTH=65536;
+    /**
+     * 上传过程中在系统临时目录下创建的文件和目录的名称前缀，回收任务按前缀清理
+     */
+    public static final String UPLOAD_TEMP_PREFIX=".upload";
+    /**
+     * 文件指纹-视频文件名
+     */
+    public static final String VIDEO_FINGERPRINT_KEY="video:fingerprint";
+    /**
+     * 视频文件名-文件指纹，转码服务覆盖文件前据此判断是否要保留原始文件副本
+     */
+    public static final String VIDEO_FINGERPRINT_OBJECT_KEY="video:fingerprint:object";
+    /**
+     * 文件指纹-原始文件副本名，由转码服务在覆盖文件前写入
+     */
+    public static final String VIDEO_FINGERPRINT_ORIGINAL_KEY="video:fingerprint:original";
+    /**
+     * 发件箱事件类型：暂存封面转正、发送转码任务、推送视频动态、同步ES
+     */
+    public static final String OUTBOX_PROMOTE_COVER="promoteCover";
+    public static final String OUTBOX_UPLOAD_NOTICE="uploadNotice";
+    public static final String OUTBOX_DYNAMIC_NOTICE="dynamicNotice";
+    public static final String OUTBOX_DB_CHANGE="dbChange";
+    public static final String OUTBOX_STAGED_NAME="stagedName";
+    public static final String OUTBOX_COVER_NAME="coverName";
+    /**
+     * 发件箱事件状态：待发送、已发送、已放弃
+     */
+    public static final int OUTBOX_PENDING=0;
+    public static final int OUTBOX_SENT=1;
+    public static final int OUTBOX_ABANDONED=2;
+    /**
+     * 首页游标分页的默认每页条数和上限
+     */
+    public static final int FEED_PAGE_SIZE=12;
+    public static final int FEED_MAX_PAGE_SIZE=50;
+    /**
+     * 首页缓存的版本号，视频新增、修改、删除和用户修改时由数据同步消费者加一，旧版本的缓存随之失效
+     */
+    public static final String FEED_VERSION_KEY="feed:version";
+    /**
+     * 首页缓存在redis中的键前缀，后接版本号和页的标识
+     */
+    public static final String FEED_PAGE_PREFIX="feed:page:";
+    /**
+     * 视频计数类型：播放、点赞、收藏、弹幕
+     */
+    public static final int COUNTER_PLAY=0;
+    public static final int COUNTER_LIKE=1;
+    public static final int COUNTER_COLLECT=2;
+    public static final int COUNTER_DANMAKU=3;
+    public static final int COUNTER_FIELDS=4;
+    /**
+     * 观看历史有序集合的键前缀，后接用户id
+     */
+    public static final String HISTORY_KEY="history:";
+    /**
+     * 观看历史游标分页的默认每页条数和上限
      */
-    public static Map<String, UploadPart> uploadPartMap=new HashMap<>();
+    public static final int HISTORY_PAGE_SIZE=20;
+    public static final int HISTORY_MAX_PAGE_SIZE=50;
 }
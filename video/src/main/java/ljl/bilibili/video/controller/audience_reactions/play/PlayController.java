@@ -3,18 +3,23 @@ package ljl.bilibili.video.controller.audience_reactions.play;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import ljl.bilibili.video.service.audience_reactions.play.PlayService;
+import ljl.bilibili.video.service.audience_reactions.play.VideoStreamService;
 import ljl.bilibili.video.service.audience_reactions.play.impl.PlayServiceImpl;
 import ljl.bilibili.video.vo.request.audience_reactions.play.DeleteHistoryVideoRequest;
 import ljl.bilibili.client.pojo.RecommendVideo;
 import ljl.bilibili.util.Result;
 import ljl.bilibili.video.vo.response.audience_reactions.play.CommendVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.DetailVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.FeedVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryPageResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryVideoResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.util.List;
 
 @RestController
@@ -24,6 +29,8 @@ import java.util.List;
 public class PlayController {
     @Resource
     PlayService playService;
+    @Resource
+    VideoStreamService videoStreamService;
     @ApiOperation("删除历史播放视频")
     @PostMapping("/deleteHistoryVideo")
     public Result<Boolean> deleteHistoryVideo(@RequestBody DeleteHistoryVideoRequest deleteHistoryVideoRequest) {
@@ -50,6 +57,12 @@ public class PlayController {
         return playService.getHistoryVideo(userId);
     }
 
+    @GetMapping("/getHistoryPage/{userId}")
+    @ApiOperation("按游标获取历史视频，首次不传cursor，之后传上一页返回的nextCursor")
+    public Result<HistoryPageResponse> getHistoryPage(@PathVariable Integer userId, @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer size) {
+        return playService.getHistoryPage(userId, cursor, size);
+    }
+
     @GetMapping("/getDetailVideo/{videoId}/{userId}/{collectGroupId}")
     @ApiOperation("视频详情页的视频信息")
     public Result<DetailVideoResponse> getDetailVideo(@PathVariable Integer videoId, @PathVariable Integer userId, @PathVariable String collectGroupId) {
@@ -69,4 +82,16 @@ public class PlayController {
     public Result<List<FirstPageVideoResponse>> getFirstPageVideoResponse(@PathVariable Integer count) {
         return playService.getFirstPageVideoResponse(count);
     }
+
+    @GetMapping("/getFeedVideo")
+    @ApiOperation("按游标获取首页视频，首次不传cursor，之后传上一页返回的nextCursor")
+    public Result<FeedVideoResponse> getFeedVideo(@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer size) {
+        return playService.getFeedVideo(cursor, size);
+    }
+
+    @GetMapping("/stream/{objectName:.+}")
+    @ApiOperation("按Range分段播放视频，支持拖动进度条和浏览器缓存")
+    public void stream(@PathVariable String objectName, HttpServletRequest request, HttpServletResponse response) {
+        videoStreamService.stream(objectName, request, response);
+    }
 }
@@ -9,6 +9,7 @@ import ljl.bilibili.video.vo.request.video_production.DeleteVideoRequest;
 import ljl.bilibili.video.vo.request.video_production.EditVideoRequest;
 import ljl.bilibili.video.vo.request.video_production.UploadPartRequest;
 import ljl.bilibili.video.vo.request.video_production.UploadVideoRequest;
+import ljl.bilibili.video.vo.response.video_production.PresignedUploadResponse;
 import ljl.bilibili.video.vo.response.video_production.UploadProcessorResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -37,11 +38,21 @@ public class UploadAndEditController {
         log.info("上传视频");
         return uploadAndEditService.uploadTotal(uploadVideoRequest);
     }
-    @ApiOperation("上传分片并获取视频第一帧图片和合并后的路径")
+    @ApiOperation("上传分片并获取合并后的路径")
     @PostMapping("/uploadPart")
     public Result<List<String>> uploadPart(@ModelAttribute UploadPartRequest uploadPartRequest) throws EncoderException, IOException, ServerException, InsufficientDataException, ErrorResponseException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
         return uploadAndEditService.uploadPart(uploadPartRequest);
     }
+    @ApiOperation("预签名直传：创建分片上传并获取每个分片的上传地址，分片由客户端直接PUT到MinIO")
+    @PostMapping("/createPresignedUpload")
+    public Result<PresignedUploadResponse> createPresignedUpload(@RequestParam("resumableIdentifier") String resumableIdentifier, @RequestParam("resumableTotalChunks") Integer resumableTotalChunks) {
+        return uploadAndEditService.createPresignedUpload(resumableIdentifier, resumableTotalChunks);
+    }
+    @ApiOperation("预签名直传：所有分片上传完成后合并并获取合并后的路径")
+    @PostMapping("/completePresignedUpload")
+    public Result<List<String>> completePresignedUpload(@RequestParam("resumableIdentifier") String resumableIdentifier) {
+        return uploadAndEditService.completePresignedUpload(resumableIdentifier);
+    }
     @ApiOperation("编辑视频")
     @PostMapping("edit")
     public Result<Boolean> edit(@ModelAttribute EditVideoRequest editVideoRequest){
@@ -60,4 +71,28 @@ public class UploadAndEditController {
     public ResponseEntity<Result<Boolean>> getProcessor(@RequestParam("resumableIdentifier") String resumableIdentifier,@RequestParam("resumableChunkNumber")Integer resumableChunkNumber) {
         return uploadAndEditService.getProcessor(resumableIdentifier,resumableChunkNumber);
     }
+
+    @ApiOperation("一次返回所有已上传分片的位图，用于断点续传")
+    @GetMapping("/getResumeMap")
+    public ResponseEntity<Result<UploadProcessorResponse>> getResumeMap(@RequestParam("resumableIdentifier") String resumableIdentifier, @RequestParam("resumableTotalChunks") Integer resumableTotalChunks) {
+        return uploadAndEditService.getResumeMap(resumableIdentifier, resumableTotalChunks);
+    }
+
+    @ApiOperation("轮询上传视频的封面，尚未生成时返回204")
+    @GetMapping("/getCover")
+    public ResponseEntity<Result<String>> getCover(@RequestParam("resumableIdentifier") String resumableIdentifier) {
+        return uploadAndEditService.getCover(resumableIdentifier);
+    }
+
+    @ApiOperation("秒传：按文件指纹查找已有视频文件，命中时返回需要校验的范围“偏移,长度”，不存在时返回204")
+    @GetMapping("/instantUpload")
+    public ResponseEntity<Result<String>> instantUpload(@RequestParam("resumableIdentifier") String resumableIdentifier, @RequestParam("fingerprint") String fingerprint) {
+        return uploadAndEditService.instantUpload(resumableIdentifier, fingerprint);
+    }
+
+    @ApiOperation("秒传：提交校验范围内字节的SHA-256，通过后即可用该文件标识符调用uploadTotal")
+    @PostMapping("/verifyInstantUpload")
+    public Result<Boolean> verifyInstantUpload(@RequestParam("resumableIdentifier") String resumableIdentifier, @RequestParam("proof") String proof) {
+        return uploadAndEditService.verifyInstantUpload(resumableIdentifier, proof);
+    }
 }
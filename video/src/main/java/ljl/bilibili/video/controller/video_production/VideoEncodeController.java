@@ -36,13 +36,13 @@ public class VideoEncodeController {
     @PostMapping(value = "/uploadVideo",consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @ResponseBody
     public void uploadVideo(@RequestPart("multipartFile") MultipartFile multipartFile) throws IOException {
-         minioService.uploadVideoFile(multipartFile.getOriginalFilename(),multipartFile.getInputStream(),VIDEO_TYPE);
+         minioService.uploadVideoFile(multipartFile.getOriginalFilename(),multipartFile,VIDEO_TYPE);
     }
     @ApiIgnore
     @PostMapping(value = "/uploadVideoCover",consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @ResponseBody
     public void uploadVideoCover(@RequestPart("multipartFile") MultipartFile multipartFile) throws IOException {
-        minioService.uploadImgFile(multipartFile.getOriginalFilename(),multipartFile.getInputStream(),IMAGE_TYPE);
+        minioService.uploadImgFile(multipartFile.getOriginalFilename(),multipartFile,IMAGE_TYPE);
     }
 
 }
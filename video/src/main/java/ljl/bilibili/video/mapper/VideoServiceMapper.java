@@ -1,11 +1,16 @@
 package ljl.bilibili.video.mapper;
 
+import ljl.bilibili.video.pojo.PlayEvent;
+import ljl.bilibili.video.pojo.VideoCounterDelta;
 import ljl.bilibili.video.vo.response.audience_reactions.collect.CollectVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.comment.CommentDetailResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryVideoResponse;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
@@ -22,6 +27,33 @@ public interface VideoServiceMapper {
     List<CollectVideoResponse> getCollectVideo(Integer collectGroupId);
     @Select("SELECT     v.name,v.length,v.create_time,v.cover,v.url,u.nickname AS authorName,v.id AS videoId,u.id AS authorId,vd.play_count,vd.danmaku_count   FROM video  v    LEFT JOIN user u ON (u.id = v.user_id) LEFT JOIN video_data vd ON (vd.video_id = v.id)          ORDER BY v.id DESC limit #{count},12")
     List<FirstPageVideoResponse> getFirstPageVideo(Integer count);
-    @Select("select p.create_time as createTime,v.name AS videoName,v.length,v.id AS videoId,v.cover AS videoCover,u.id AS authorId,u.cover AS authorCover,u.nickname AS authorName   FROM play  p    INNER JOIN video v ON (v.id = p.video_id) INNER JOIN user u ON (u.id = v.user_id)     WHERE   (p.user_id = #{userId}) ORDER BY p.create_time DESC")
-    List<HistoryVideoResponse> getHistoryVideo(Integer userId);
+    /**
+     * 按主键倒序从上一页最后一个视频之后接着取，走主键索引定位起点，不扫描前面的行
+     */
+    @Select("<script>SELECT     v.name,v.length,v.create_time,v.cover,v.url,u.nickname AS authorName,v.id AS videoId,u.id AS authorId,vd.play_count,vd.danmaku_count   FROM video  v    LEFT JOIN user u ON (u.id = v.user_id) LEFT JOIN video_data vd ON (vd.video_id = v.id) " +
+            "<where><if test='lastId != null'>v.id &lt; #{lastId}</if></where> ORDER BY v.id DESC limit #{size}</script>")
+    List<FirstPageVideoResponse> getFeedVideo(@Param("lastId") Integer lastId, @Param("size") Integer size);
+    /**
+     * 一条语句把多个视频的计数增量加到video_data上，每个视频只锁一次行
+     */
+    @Update("<script>UPDATE video_data SET " +
+            "play_count = play_count + CASE video_id <foreach collection='deltas' item='d'>WHEN #{d.videoId} THEN #{d.playCount} </foreach>ELSE 0 END," +
+            "like_count = like_count + CASE video_id <foreach collection='deltas' item='d'>WHEN #{d.videoId} THEN #{d.likeCount} </foreach>ELSE 0 END," +
+            "collect_count = collect_count + CASE video_id <foreach collection='deltas' item='d'>WHEN #{d.videoId} THEN #{d.collectCount} </foreach>ELSE 0 END," +
+            "danmaku_count = danmaku_count + CASE video_id <foreach collection='deltas' item='d'>WHEN #{d.videoId} THEN #{d.danmakuCount} </foreach>ELSE 0 END " +
+            "WHERE video_id IN <foreach collection='deltas' item='d' open='(' separator=',' close=')'>#{d.videoId}</foreach></script>")
+    int addVideoDataCounts(@Param("deltas") List<VideoCounterDelta> deltas);
+    /**
+     * 批量写入播放记录，依赖play表(user_id, video_id)上的唯一索引，已存在的记录只把观看时间往后推
+     */
+    @Insert("<script>INSERT INTO play (user_id, video_id, create_time) VALUES " +
+            "<foreach collection='events' item='e' separator=','>(#{e.userId}, #{e.videoId}, #{e.playTime})</foreach> " +
+            "ON DUPLICATE KEY UPDATE create_time = GREATEST(create_time, VALUES(create_time))</script>")
+    int upsertPlays(@Param("events") List<PlayEvent> events);
+    /**
+     * 按视频id批量取历史记录卡片所需的视频和作者信息，观看时间由调用方填入
+     */
+    @Select("<script>SELECT v.name AS videoName,v.length,v.id AS videoId,v.cover AS videoCover,u.id AS authorId,u.cover AS authorCover,u.nickname AS authorName FROM video v INNER JOIN user u ON (u.id = v.user_id) " +
+            "WHERE v.id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<HistoryVideoResponse> getHistoryVideoCards(@Param("ids") List<Integer> ids);
 }
@@ -0,0 +1,23 @@
+package ljl.bilibili.video.pojo;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 分片的校验值，均为小写十六进制字符串
+ */
+@Data
+@Accessors(chain = true)
+public class ChunkChecksum {
+    /**
+     * SHA-256，用于秒传指纹
+     */
+    String sha256;
+    /**
+     * MD5，用于校验分片完整性
+     */
+    String md5;
+    /**
+     * CRC32C的32位无符号值，8位十六进制
+     */
+    String crc32c;
+}
@@ -0,0 +1,16 @@
+package ljl.bilibili.video.pojo;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一次播放，同一用户同一视频在一个刷新周期内的多次播放合并为最后一次
+ */
+@Data
+@Accessors(chain = true)
+public class PlayEvent {
+    Integer userId;
+    Integer videoId;
+    LocalDateTime playTime;
+}
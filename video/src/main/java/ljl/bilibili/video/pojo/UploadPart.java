@@ -2,26 +2,25 @@ package ljl.bilibili.video.pojo;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 单机内存中的分片上传会话（一个文件标识符对应一个）
+ */
 @Data
 @Accessors(chain = true)
 public class UploadPart {
     /**
      * 分片序号-分片名称（分片文件名）
      */
-    Map<Integer,String> partMap=new HashMap<>();
+    Map<Integer,String> partMap=new ConcurrentHashMap<>();
     /**
-     * 已上传分片数
+     * 会话属性，如封面、合并后的文件名等
      */
-    Integer totalCount=0;
+    Map<String,String> attributeMap=new ConcurrentHashMap<>();
     /**
-     * 是否已经切分封面
+     * 最后一次写入时间（毫秒），用于过期淘汰
      */
-    Boolean hasCutImg=false;
-    /**
-     * 封面的base64编码
-     */
-    String cover="";
+    volatile long lastAccessTime=System.currentTimeMillis();
 }
@@ -0,0 +1,36 @@
+package ljl.bilibili.video.pojo;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 一次回收上传垃圾的结果
+ */
+@Data
+@Accessors(chain = true)
+public class UploadReapReport {
+    /**
+     * 回收的过期上传会话数
+     */
+    int sessions;
+    /**
+     * 删除的分片对象数（compose模式）
+     */
+    int chunkObjects;
+    /**
+     * 取消的S3分片上传数（multipart模式）
+     */
+    int multipartUploads;
+    /**
+     * 删除的已合并但没有投稿使用的视频文件数
+     */
+    int mergedObjects;
+    /**
+     * 删除的暂存封面数
+     */
+    int stagedCovers;
+    /**
+     * 删除的本地临时文件和目录数及其占用的字节数
+     */
+    int tempFiles;
+    long tempBytes;
+}
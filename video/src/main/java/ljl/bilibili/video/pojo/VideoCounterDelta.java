@@ -0,0 +1,33 @@
+package ljl.bilibili.video.pojo;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 一个视频尚未写入video_data的计数增量，可为负数
+ */
+@Data
+@Accessors(chain = true)
+public class VideoCounterDelta {
+    Integer videoId;
+    long playCount;
+    long likeCount;
+    long collectCount;
+    long danmakuCount;
+
+    public VideoCounterDelta add(int field, long delta) {
+        switch (field) {
+            case COUNTER_PLAY: playCount += delta; break;
+            case COUNTER_LIKE: likeCount += delta; break;
+            case COUNTER_COLLECT: collectCount += delta; break;
+            case COUNTER_DANMAKU: danmakuCount += delta; break;
+            default: throw new IllegalArgumentException("未知的计数类型：" + field);
+        }
+        return this;
+    }
+
+    public boolean isZero() {
+        return playCount == 0 && likeCount == 0 && collectCount == 0 && danmakuCount == 0;
+    }
+}
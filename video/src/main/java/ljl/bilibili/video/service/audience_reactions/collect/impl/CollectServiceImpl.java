@@ -15,6 +15,7 @@ import ljl.bilibili.video.mapper.VideoServiceMapper;
 import ljl.bilibili.video.service.audience_reactions.collect.CollectService;
 import ljl.bilibili.video.vo.request.audience_reactions.collect.CollectGroupRequest;
 import ljl.bilibili.video.vo.request.audience_reactions.collect.CollectRequest;
+import ljl.bilibili.video.service.audience_reactions.counter.VideoCounterService;
 import ljl.bilibili.video.vo.response.audience_reactions.collect.CollectGroupResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.collect.CollectVideoResponse;
 import org.springframework.stereotype.Service;
@@ -24,6 +25,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+
+import static ljl.bilibili.video.constant.Constant.COUNTER_COLLECT;
 /**
  * 收藏
  */
@@ -37,6 +40,8 @@ public class CollectServiceImpl implements CollectService {
     SendNoticeClient client;
     @Resource
     VideoServiceMapper videoServiceMapper;
+    @Resource
+    VideoCounterService videoCounterService;
     /**
      *收藏视频
      */
@@ -49,11 +54,15 @@ public class CollectServiceImpl implements CollectService {
                 collect.setCollectGroupId(collectRequest.getCollectGroupId());
                 collect.setVideoId(collectRequest.getVideoId());
                 collectMapper.insert(collect);
+                videoCounterService.increment(collect.getVideoId(),COUNTER_COLLECT,1);
             }else {
                 LambdaQueryWrapper<Collect> wrapper = new LambdaQueryWrapper<>();
                 wrapper.eq(Collect::getVideoId, collectRequest.getVideoId());
                 wrapper.eq(Collect::getCollectGroupId, collectRequest.getCollectGroupId());
-                collectMapper.delete(wrapper);
+                int deleted=collectMapper.delete(wrapper);
+                if(deleted>0){
+                    videoCounterService.increment(collectRequest.getVideoId(),COUNTER_COLLECT,-deleted);
+                }
             }
         }
         return Result.success(true);
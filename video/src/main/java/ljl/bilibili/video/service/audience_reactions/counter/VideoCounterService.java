@@ -0,0 +1,31 @@
+package ljl.bilibili.video.service.audience_reactions.counter;
+
+import ljl.bilibili.entity.video.video_production.upload.VideoData;
+import ljl.bilibili.video.pojo.VideoCounterDelta;
+
+/**
+ * 视频播放、点赞、收藏、弹幕计数的合并写：增量先累加在内存中，定时合并成一条批量更新写入video_data
+ */
+public interface VideoCounterService {
+    /**
+     * 累加一次计数
+     * @param field 计数类型，见Constant中的COUNTER_*
+     */
+    void increment(int videoId, int field, long delta);
+
+    /**
+     * 本节点尚未写入数据库的增量，没有时返回null，读取计数时加在库中的值上
+     */
+    VideoCounterDelta pending(int videoId);
+
+    /**
+     * 本节点最近一次写库后读回的播放量和弹幕量，没有时返回null；
+     * 缓存的首页计数可能早于这次写库，取两者中较大的再加上pending，计数不会因为增量已写库而倒退
+     */
+    VideoData flushedCounts(int videoId);
+
+    /**
+     * 把累积的增量写入数据库
+     */
+    void flush();
+}
@@ -0,0 +1,205 @@
+package ljl.bilibili.video.service.audience_reactions.counter.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ljl.bilibili.entity.video.video_production.upload.VideoData;
+import ljl.bilibili.mapper.video.video_production.upload.VideoDataMapper;
+import ljl.bilibili.video.mapper.VideoServiceMapper;
+import ljl.bilibili.video.pojo.VideoCounterDelta;
+import ljl.bilibili.video.service.audience_reactions.counter.VideoCounterService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 计数增量累加在LongAdder里，热门视频的并发点赞和播放分散到多个单元上，不争抢同一行锁；
+ * 每次刷新把当前一代的增量表整体换下，合并成按视频id分支的批量更新写入数据库；
+ * 每批写库后按主键读回这些视频的播放量和弹幕量，在本地保留不短于首页缓存存活时间，首页读计数时不必每次查库
+ */
+@Service
+@Slf4j
+public class VideoCounterServiceImpl implements VideoCounterService {
+    @Resource
+    VideoServiceMapper videoServiceMapper;
+    @Resource
+    VideoDataMapper videoDataMapper;
+    @Value("${counter.batch-size:500}")
+    int batchSize;
+    @Value("${counter.flushed-ttl-seconds:360}")
+    long flushedTtlSeconds;
+    /**
+     * 视频id-写库后读回的计数
+     */
+    private Cache<Integer, VideoData> flushed;
+    /**
+     * 正在接收增量的一代
+     */
+    private final AtomicReference<ConcurrentHashMap<Integer, LongAdder[]>> active = new AtomicReference<>(new ConcurrentHashMap<>());
+    /**
+     * 上一次刷新换下的一代，换下前已取到引用的线程可能还在往里加，下一次刷新时再收一遍
+     */
+    private volatile ConcurrentHashMap<Integer, LongAdder[]> retired = new ConcurrentHashMap<>();
+    /**
+     * 已从增量表取出、正在写库的增量，写库完成前读取时仍要算上
+     */
+    private volatile Map<Integer, VideoCounterDelta> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        flushed = CacheBuilder.newBuilder().expireAfterWrite(flushedTtlSeconds, TimeUnit.SECONDS).build();
+    }
+
+    @Override
+    public void increment(int videoId, int field, long delta) {
+        active.get().computeIfAbsent(videoId, k -> newAdders())[field].add(delta);
+    }
+
+    @Override
+    public VideoCounterDelta pending(int videoId) {
+        VideoCounterDelta delta = new VideoCounterDelta().setVideoId(videoId);
+        addTo(delta, active.get().get(videoId));
+        addTo(delta, retired.get(videoId));
+        VideoCounterDelta flushing = inFlight.get(videoId);
+        if (flushing != null) {
+            delta.setPlayCount(delta.getPlayCount() + flushing.getPlayCount())
+                    .setLikeCount(delta.getLikeCount() + flushing.getLikeCount())
+                    .setCollectCount(delta.getCollectCount() + flushing.getCollectCount())
+                    .setDanmakuCount(delta.getDanmakuCount() + flushing.getDanmakuCount());
+        }
+        return delta.isZero() ? null : delta;
+    }
+
+    @Override
+    public VideoData flushedCounts(int videoId) {
+        return flushed.getIfPresent(videoId);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${counter.flush-interval-ms:2000}")
+    public synchronized void flush() {
+        ConcurrentHashMap<Integer, LongAdder[]> previous = retired;
+        retired = active.getAndSet(new ConcurrentHashMap<>());
+        Map<Integer, VideoCounterDelta> deltas = new HashMap<>();
+        drain(previous, deltas);
+        drain(retired, deltas);
+        deltas.values().removeIf(VideoCounterDelta::isZero);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        inFlight = new ConcurrentHashMap<>(deltas);
+        List<VideoCounterDelta> all = new ArrayList<>(deltas.values());
+        //各节点按相同顺序加行锁，避免批量更新之间互相死锁
+        all.sort(Comparator.comparing(VideoCounterDelta::getVideoId));
+        List<VideoCounterDelta> failed = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += batchSize) {
+            List<VideoCounterDelta> batch = all.subList(i, Math.min(i + batchSize, all.size()));
+            boolean written = true;
+            try {
+                videoServiceMapper.addVideoDataCounts(batch);
+            } catch (Exception e) {
+                log.error("写入视频计数失败，{}个视频的增量留待下次刷新：{}", batch.size(), e.getMessage());
+                failed.addAll(batch);
+                written = false;
+            }
+            if (written) {
+                readBack(batch);
+            }
+            //已写库的增量不再额外计入读取结果
+            for (VideoCounterDelta delta : batch) {
+                inFlight.remove(delta.getVideoId());
+            }
+        }
+        //写库失败的增量放回去，下次刷新时和新增量合并后重试
+        for (VideoCounterDelta delta : failed) {
+            restore(delta);
+        }
+    }
+
+    /**
+     * 读回本批有播放或弹幕增量的视频的计数，紧接着才从inFlight中移除，读取时不会短暂倒退
+     */
+    private void readBack(List<VideoCounterDelta> batch) {
+        List<Integer> ids = batch.stream().filter(delta -> delta.getPlayCount() != 0 || delta.getDanmakuCount() != 0)
+                .map(VideoCounterDelta::getVideoId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            LambdaQueryWrapper<VideoData> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(VideoData::getVideoId, VideoData::getPlayCount, VideoData::getDanmakuCount).in(VideoData::getVideoId, ids);
+            for (VideoData videoData : videoDataMapper.selectList(wrapper)) {
+                flushed.put(videoData.getVideoId(), videoData);
+            }
+        } catch (Exception e) {
+            log.warn("读回视频计数失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停机前把内存中的增量写入数据库
+     */
+    @PreDestroy
+    public void shutdown() {
+        //第二次刷新收回最后换下的一代
+        flush();
+        flush();
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[COUNTER_FIELDS];
+        for (int i = 0; i < COUNTER_FIELDS; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * 取出一代中的增量；读出的值再减回去而不是清零，读的同时加进来的增量不会丢
+     */
+    private static void drain(Map<Integer, LongAdder[]> generation, Map<Integer, VideoCounterDelta> deltas) {
+        for (Map.Entry<Integer, LongAdder[]> entry : generation.entrySet()) {
+            LongAdder[] adders = entry.getValue();
+            for (int field = 0; field < COUNTER_FIELDS; field++) {
+                long value = adders[field].sum();
+                if (value != 0) {
+                    adders[field].add(-value);
+                    deltas.computeIfAbsent(entry.getKey(), k -> new VideoCounterDelta().setVideoId(k)).add(field, value);
+                }
+            }
+        }
+    }
+
+    private static void addTo(VideoCounterDelta delta, LongAdder[] adders) {
+        if (adders == null) {
+            return;
+        }
+        for (int field = 0; field < COUNTER_FIELDS; field++) {
+            delta.add(field, adders[field].sum());
+        }
+    }
+
+    private void restore(VideoCounterDelta delta) {
+        increment(delta.getVideoId(), COUNTER_PLAY, delta.getPlayCount());
+        increment(delta.getVideoId(), COUNTER_LIKE, delta.getLikeCount());
+        increment(delta.getVideoId(), COUNTER_COLLECT, delta.getCollectCount());
+        increment(delta.getVideoId(), COUNTER_DANMAKU, delta.getDanmakuCount());
+    }
+}
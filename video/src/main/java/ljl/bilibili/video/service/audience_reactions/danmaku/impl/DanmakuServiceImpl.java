@@ -6,6 +6,7 @@ import ljl.bilibili.entity.video.audience_reactions.danmaku.Danmaku;
 import ljl.bilibili.mapper.video.audience_reactions.danmaku.DanmakuMapper;
 import ljl.bilibili.mapper.video.video_production.upload.VideoDataMapper;
 import ljl.bilibili.util.Result;
+import ljl.bilibili.video.service.audience_reactions.counter.VideoCounterService;
 import ljl.bilibili.video.service.audience_reactions.danmaku.DanmakuService;
 import ljl.bilibili.video.vo.request.audience_reactions.danmaku.AddDanmakuRequest;
 import ljl.bilibili.video.vo.response.audience_reactions.comment.CommentResponse;
@@ -15,6 +16,8 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.List;
+
+import static ljl.bilibili.video.constant.Constant.COUNTER_DANMAKU;
 /**
  *弹幕
  */
@@ -22,6 +25,8 @@ import java.util.List;
 public class DanmakuServiceImpl implements DanmakuService {
     @Resource
     DanmakuMapper danmakuMapper;
+    @Resource
+    VideoCounterService videoCounterService;
     /**
      *新增弹幕
      */
@@ -29,6 +34,7 @@ public class DanmakuServiceImpl implements DanmakuService {
     @Override
     public Result<Boolean> addDanmaku(AddDanmakuRequest addDanmakuRequest) {
         danmakuMapper.insert(addDanmakuRequest.toEntity());
+        videoCounterService.increment(addDanmakuRequest.getVideoId(),COUNTER_DANMAKU,1);
         return Result.success(true);
     }
     /**
@@ -7,12 +7,15 @@ import ljl.bilibili.entity.video.video_production.upload.Video;
 import ljl.bilibili.entity.video.video_production.upload.VideoData;
 import ljl.bilibili.mapper.video.audience_reactions.like.LikeMapper;
 import ljl.bilibili.util.Result;
+import ljl.bilibili.video.service.audience_reactions.counter.VideoCounterService;
 import ljl.bilibili.video.service.audience_reactions.like.LikeService;
 import ljl.bilibili.video.vo.request.audience_reactions.like.LikeRequest;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.concurrent.CompletableFuture;
+
+import static ljl.bilibili.video.constant.Constant.COUNTER_LIKE;
 /**
  *点赞
  */
@@ -24,12 +27,18 @@ public class LikeServiceImpl implements LikeService {
     LikeMapper likeMapper;
     @Resource
     SendNoticeClient client;
+    @Resource
+    VideoCounterService videoCounterService;
     /**
      *对视频或评论的点赞
      */
     @Override
     public Result<Boolean> like(LikeRequest likeRequest) {
         likeMapper.insert(likeRequest.toEntity());
+        //评论点赞不计入视频点赞数
+        if(likeRequest.getCommentId()==null){
+            videoCounterService.increment(likeRequest.getVideoId(),COUNTER_LIKE,1);
+        }
         LambdaQueryWrapper<Video> wrapper=new LambdaQueryWrapper<>();
         wrapper.eq(Video::getId,likeRequest.getVideoId());
         CompletableFuture<Void> completableFuture=CompletableFuture.runAsync(()->{
@@ -58,7 +67,9 @@ public class LikeServiceImpl implements LikeService {
         }
         // todo：取消点赞消息发送到队列
         client.sendLikeNotice(likeRequest.toAddOrDeleteNotice().setType(1));
-        likeMapper.delete(wrapper);
+        if(likeMapper.delete(wrapper)>0 && likeRequest.getCommentId()==null){
+            videoCounterService.increment(likeRequest.getVideoId(),COUNTER_LIKE,-1);
+        }
         return Result.success(true);
     }
 }
@@ -0,0 +1,22 @@
+package ljl.bilibili.video.service.audience_reactions.play;
+
+import ljl.bilibili.video.vo.response.audience_reactions.play.FeedVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
+
+import java.util.List;
+
+/**
+ * 首页视频的两级缓存：进程内一级缓存，redis二级缓存，都未命中时才查库
+ */
+public interface FeedCacheService {
+    /**
+     * 按游标取一页首页视频
+     * @param lastId 上一页最后一个视频id，为空时取第一页
+     */
+    FeedVideoResponse getFeedPage(Integer lastId, int size);
+
+    /**
+     * 按偏移量取一页首页视频（旧接口）
+     */
+    List<FirstPageVideoResponse> getFirstPage(int offset);
+}
@@ -0,0 +1,21 @@
+package ljl.bilibili.video.service.audience_reactions.play;
+
+/**
+ * 播放记录的合并写：播放事件先缓冲在内存中按用户和视频去重，定时批量写入play表，重复观看只刷新观看时间
+ */
+public interface PlayEventService {
+    /**
+     * 记录一次播放
+     */
+    void record(int userId, int videoId);
+
+    /**
+     * 丢弃尚未写库的播放事件，删除历史记录前调用，避免删除后又被写回
+     */
+    void discard(int userId, int videoId);
+
+    /**
+     * 把缓冲的播放事件写入数据库
+     */
+    void flush();
+}
@@ -5,7 +5,9 @@ import ljl.bilibili.util.Result;
 import ljl.bilibili.video.vo.request.audience_reactions.play.DeleteHistoryVideoRequest;
 import ljl.bilibili.video.vo.response.audience_reactions.play.CommendVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.DetailVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.FeedVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryPageResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryVideoResponse;
 
 import java.util.List;
@@ -16,5 +18,7 @@ public interface PlayService {
     Result<DetailVideoResponse> getDetailVideo(Integer videoId, Integer userId, String collectGroupId);
     Result<List<CommendVideoResponse>> getRecommendVideo(String videoId);
     Result<List<FirstPageVideoResponse>> getFirstPageVideoResponse(Integer count);
+    Result<FeedVideoResponse> getFeedVideo(String cursor, Integer size);
     Result<List<HistoryVideoResponse>> getHistoryVideo(int userId);
+    Result<HistoryPageResponse> getHistoryPage(int userId, String cursor, Integer size);
 }
@@ -0,0 +1,16 @@
+package ljl.bilibili.video.service.audience_reactions.play;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 本节点磁盘上的视频分块缓存，热门视频的同一段只从MinIO读取一次
+ */
+public interface VideoBlockCacheService {
+    /**
+     * 把[start, end]闭区间的内容写到out，未命中的块从MinIO读取后写入缓存
+     * @param etag 对象当前的ETag，参与缓存键，对象被覆盖后旧块不会再被读到
+     * @param size 对象大小，用于确定最后一块的长度
+     */
+    void write(String objectName, String etag, long size, long start, long end, OutputStream out) throws IOException;
+}
@@ -0,0 +1,14 @@
+package ljl.bilibili.video.service.audience_reactions.play;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 按Range请求分段播放视频
+ */
+public interface VideoStreamService {
+    /**
+     * 支持单个Range、If-Range和条件请求，命中缓存时返回304，范围无效时返回416
+     */
+    void stream(String objectName, HttpServletRequest request, HttpServletResponse response);
+}
@@ -0,0 +1,25 @@
+package ljl.bilibili.video.service.audience_reactions.play;
+
+import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryPageResponse;
+
+/**
+ * 观看历史：每个用户一个redis有序集合，按最后观看时间排序并限制条数，play表作为冷存储，集合不存在时从表中重建
+ */
+public interface WatchHistoryService {
+    /**
+     * 记录一次观看，已在历史中的视频移到最前面，超出上限的最早记录被裁掉
+     */
+    void add(int userId, int videoId, long watchTime);
+
+    /**
+     * 从历史中移除一个视频
+     */
+    void remove(int userId, int videoId);
+
+    /**
+     * 按游标取一页历史视频
+     * @param beforeTime 上一页最后一条的观看时间，为空时取第一页
+     * @param beforeVideoId 上一页最后一条的视频id，与观看时间一起定位，观看时间相同的记录不会被跳过
+     */
+    HistoryPageResponse page(int userId, Long beforeTime, Integer beforeVideoId, int size);
+}
@@ -0,0 +1,175 @@
+package ljl.bilibili.video.service.audience_reactions.play.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import ljl.bilibili.video.mapper.VideoServiceMapper;
+import ljl.bilibili.video.service.audience_reactions.play.FeedCacheService;
+import ljl.bilibili.video.vo.response.audience_reactions.play.FeedVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 一级缓存是按条数和写入时间淘汰的Guava缓存，写入超过refresh-seconds后再被访问时在后台线程重新查库并刷新二级缓存，访问线程继续拿旧值；
+ * 二级缓存在redis中保存序列化好的页，多个节点共享。
+ * 缓存键都带版本号，数据同步消费者收到视频新增、修改、删除或用户修改的事件时把版本号加一，各节点按version-check-ms的间隔读取版本号，新版本下旧缓存不再被读到。
+ */
+@Service
+@Slf4j
+public class FeedCacheServiceImpl implements FeedCacheService {
+    private static final String FEED = "feed";
+    private static final String OFFSET = "offset";
+    @Resource
+    VideoServiceMapper videoServiceMapper;
+    @Resource
+    RedisTemplate<String, String> redisTemplate;
+    @Resource
+    ObjectMapper objectMapper;
+    @Resource(name = "feedRefreshExecutor")
+    ThreadPoolTaskExecutor feedRefreshExecutor;
+    @Value("${feed.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${feed.cache.max-size:1000}")
+    private long maxSize;
+    @Value("${feed.cache.expire-seconds:60}")
+    private long expireSeconds;
+    @Value("${feed.cache.refresh-seconds:20}")
+    private long refreshSeconds;
+    @Value("${feed.cache.redis-ttl-seconds:300}")
+    private long redisTtlSeconds;
+    @Value("${feed.cache.version-check-ms:1000}")
+    private long versionCheckMs;
+    private LoadingCache<PageKey, Object> pages;
+    private volatile long version;
+    private volatile long versionCheckedAt;
+
+    @Data
+    private static class PageKey {
+        private final long version;
+        private final String kind;
+        private final Integer lastId;
+        private final int size;
+
+        String redisKey() {
+            return FEED_PAGE_PREFIX + version + ":" + kind + ":" + lastId + ":" + size;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        pages = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .refreshAfterWrite(refreshSeconds, TimeUnit.SECONDS)
+                .build(new CacheLoader<PageKey, Object>() {
+                    @Override
+                    public Object load(PageKey key) {
+                        Object cached = readRedis(key);
+                        return cached != null ? cached : loadAndStore(key);
+                    }
+
+                    @Override
+                    public ListenableFuture<Object> reload(PageKey key, Object oldValue) {
+                        ListenableFutureTask<Object> task = ListenableFutureTask.create(() -> loadAndStore(key));
+                        try {
+                            feedRefreshExecutor.execute(task);
+                        } catch (RejectedExecutionException e) {
+                            return Futures.immediateFuture(oldValue);
+                        }
+                        return task;
+                    }
+                });
+    }
+
+    @Override
+    public FeedVideoResponse getFeedPage(Integer lastId, int size) {
+        PageKey key = new PageKey(currentVersion(), FEED, lastId, size);
+        return (FeedVideoResponse) (enabled ? pages.getUnchecked(key) : query(key));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<FirstPageVideoResponse> getFirstPage(int offset) {
+        PageKey key = new PageKey(currentVersion(), OFFSET, offset, 0);
+        return (List<FirstPageVideoResponse>) (enabled ? pages.getUnchecked(key) : query(key));
+    }
+
+    private Object query(PageKey key) {
+        if (OFFSET.equals(key.getKind())) {
+            return videoServiceMapper.getFirstPageVideo(key.getLastId());
+        }
+        // 多取一条判断是否还有下一页
+        List<FirstPageVideoResponse> videos = videoServiceMapper.getFeedVideo(key.getLastId(), key.getSize() + 1);
+        boolean hasMore = videos.size() > key.getSize();
+        if (hasMore) {
+            videos = videos.subList(0, key.getSize());
+        }
+        String nextCursor = hasMore ? Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.valueOf(videos.get(videos.size() - 1).getVideoId()).getBytes(StandardCharsets.UTF_8)) : null;
+        return new FeedVideoResponse().setVideos(videos).setNextCursor(nextCursor).setHasMore(hasMore);
+    }
+
+    private Object loadAndStore(PageKey key) {
+        Object page = query(key);
+        try {
+            redisTemplate.opsForValue().set(key.redisKey(), objectMapper.writeValueAsString(page), redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入首页二级缓存失败：" + e.getMessage());
+        }
+        return page;
+    }
+
+    /**
+     * redis不可用时当作未命中，退回查库
+     */
+    private Object readRedis(PageKey key) {
+        try {
+            String json = redisTemplate.opsForValue().get(key.redisKey());
+            if (json == null) {
+                return null;
+            }
+            if (OFFSET.equals(key.getKind())) {
+                return objectMapper.readValue(json, new TypeReference<List<FirstPageVideoResponse>>() {
+                });
+            }
+            return objectMapper.readValue(json, FeedVideoResponse.class);
+        } catch (Exception e) {
+            log.warn("读取首页二级缓存失败：" + e.getMessage());
+            return null;
+        }
+    }
+
+    private long currentVersion() {
+        long now = System.currentTimeMillis();
+        if (now - versionCheckedAt >= versionCheckMs) {
+            try {
+                String value = redisTemplate.opsForValue().get(FEED_VERSION_KEY);
+                version = value == null ? 0 : Long.parseLong(value);
+            } catch (Exception e) {
+                log.warn("读取首页缓存版本号失败：" + e.getMessage());
+            }
+            versionCheckedAt = now;
+        }
+        return version;
+    }
+}
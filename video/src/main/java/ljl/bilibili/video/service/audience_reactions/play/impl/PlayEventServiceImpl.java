@@ -0,0 +1,99 @@
+package ljl.bilibili.video.service.audience_reactions.play.impl;
+
+import ljl.bilibili.video.mapper.VideoServiceMapper;
+import ljl.bilibili.video.pojo.PlayEvent;
+import ljl.bilibili.video.service.audience_reactions.play.PlayEventService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 缓冲以(用户id,视频id)为键，同一用户反复播放同一视频只保留最后一次；
+ * 写库用INSERT ... ON DUPLICATE KEY UPDATE，重复写入同一条事件不会产生重复记录，刷新时可以放心重收
+ */
+@Service
+@Slf4j
+public class PlayEventServiceImpl implements PlayEventService {
+    @Resource
+    VideoServiceMapper videoServiceMapper;
+    @Value("${play.event.batch-size:500}")
+    int batchSize;
+    /**
+     * 正在接收播放事件的一代
+     */
+    private final AtomicReference<ConcurrentHashMap<Long, LocalDateTime>> active = new AtomicReference<>(new ConcurrentHashMap<>());
+    /**
+     * 上一次刷新换下的一代，换下前已取到引用的线程可能还在往里写，下一次刷新时再收一遍
+     */
+    private volatile ConcurrentHashMap<Long, LocalDateTime> retired = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(int userId, int videoId) {
+        active.get().merge(key(userId, videoId), LocalDateTime.now(), PlayEventServiceImpl::later);
+    }
+
+    @Override
+    public synchronized void discard(int userId, int videoId) {
+        long key = key(userId, videoId);
+        active.get().remove(key);
+        retired.remove(key);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${play.event.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        ConcurrentHashMap<Long, LocalDateTime> previous = retired;
+        retired = active.getAndSet(new ConcurrentHashMap<>());
+        Map<Long, LocalDateTime> merged = new HashMap<>(previous);
+        retired.forEach((key, time) -> merged.merge(key, time, PlayEventServiceImpl::later));
+        if (merged.isEmpty()) {
+            return;
+        }
+        List<PlayEvent> events = new ArrayList<>(merged.size());
+        merged.forEach((key, time) -> events.add(new PlayEvent().setUserId((int) (key >>> 32)).setVideoId((int) (long) key).setPlayTime(time)));
+        //各节点按相同顺序写唯一索引，避免批量插入之间互相死锁
+        events.sort(Comparator.comparing(PlayEvent::getUserId).thenComparing(PlayEvent::getVideoId));
+        for (int i = 0; i < events.size(); i += batchSize) {
+            List<PlayEvent> batch = events.subList(i, Math.min(i + batchSize, events.size()));
+            try {
+                videoServiceMapper.upsertPlays(batch);
+            } catch (Exception e) {
+                //写库失败的事件放回缓冲，和之后的播放合并后重试
+                log.error("写入播放记录失败，{}条留待下次刷新：{}", batch.size(), e.getMessage());
+                for (PlayEvent event : batch) {
+                    active.get().merge(key(event.getUserId(), event.getVideoId()), event.getPlayTime(), PlayEventServiceImpl::later);
+                }
+            }
+        }
+    }
+
+    /**
+     * 停机前把缓冲的播放事件写入数据库
+     */
+    @PreDestroy
+    public void shutdown() {
+        //第二次刷新收回最后换下的一代
+        flush();
+        flush();
+    }
+
+    private static long key(int userId, int videoId) {
+        return ((long) userId << 32) | (videoId & 0xFFFFFFFFL);
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -16,19 +16,30 @@ import ljl.bilibili.mapper.video.audience_reactions.play.PlayMapper;
 import ljl.bilibili.mapper.video.video_production.upload.VideoMapper;
 import ljl.bilibili.util.Result;
 import ljl.bilibili.video.mapper.VideoServiceMapper;
+import ljl.bilibili.video.pojo.VideoCounterDelta;
+import ljl.bilibili.video.service.audience_reactions.counter.VideoCounterService;
+import ljl.bilibili.video.service.audience_reactions.play.FeedCacheService;
+import ljl.bilibili.video.service.audience_reactions.play.PlayEventService;
 import ljl.bilibili.video.service.audience_reactions.play.PlayService;
+import ljl.bilibili.video.service.audience_reactions.play.WatchHistoryService;
 import ljl.bilibili.video.vo.request.audience_reactions.play.DeleteHistoryVideoRequest;
 import ljl.bilibili.video.vo.response.audience_reactions.play.CommendVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.DetailVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.FeedVideoResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.FirstPageVideoResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryPageResponse;
 import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryVideoResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -53,27 +64,35 @@ public class PlayServiceImpl implements PlayService {
     RedisTemplate objectRedisTemplate;
     @Resource
     VideoServiceMapper videoServiceMapper;
+    @Resource
+    FeedCacheService feedCacheService;
+    @Resource
+    VideoCounterService videoCounterService;
+    @Resource
+    PlayEventService playEventService;
+    @Resource
+    WatchHistoryService watchHistoryService;
+    @Value("${history.max-size:500}")
+    int historyMaxSize;
     /**
      *新增播放记录
      */
     @Override
     public Result<Boolean> addPlayRecord(int videoId, int userId){
-        LambdaQueryWrapper<Play> wrapper=new LambdaQueryWrapper<>();
-        wrapper.eq(Play::getVideoId,videoId);
-        wrapper.eq(Play::getUserId,userId);
-        //如果已经增加过了则不新增播放记录
-        if(!playMapper.selectList(wrapper).isEmpty()){
-            return Result.success(HAS_PLAY);
-        }else {
-            playMapper.insert(new Play().setVideoId(videoId).setUserId(userId));
-            return Result.success(true);
-        }
+        //每次播放都计入播放量，播放记录仍每人只留一条
+        videoCounterService.increment(videoId,COUNTER_PLAY,1);
+        //播放记录交给缓冲批量写入，重复观看时刷新观看时间，使其回到历史记录最前面
+        playEventService.record(userId,videoId);
+        watchHistoryService.add(userId,videoId,System.currentTimeMillis());
+        return Result.success(true);
     }
     /**
      *删除历史视频
      */
     @Override
     public Result<Boolean> deleteHistoryVideo(DeleteHistoryVideoRequest deleteHistoryVideoRequest){
+        playEventService.discard(deleteHistoryVideoRequest.getUserId(),deleteHistoryVideoRequest.getVideoId());
+        watchHistoryService.remove(deleteHistoryVideoRequest.getUserId(),deleteHistoryVideoRequest.getVideoId());
         LambdaQueryWrapper<Play> wrapper=new LambdaQueryWrapper<>();
         wrapper.eq(Play::getUserId,deleteHistoryVideoRequest.getUserId());
         wrapper.eq(Play::getVideoId,deleteHistoryVideoRequest.getVideoId());
@@ -110,6 +129,13 @@ public class PlayServiceImpl implements PlayService {
         if(collects.size()>0){
             response.setIsCollected(true);
         }
+        VideoCounterDelta delta = videoCounterService.pending(videoId);
+        if (response != null && delta != null) {
+            response.setPlayCount((int) (response.getPlayCount() + delta.getPlayCount()))
+                    .setLikeCount((int) (response.getLikeCount() + delta.getLikeCount()))
+                    .setCollectCount((int) (response.getCollectCount() + delta.getCollectCount()))
+                    .setDanmakuCount((int) (response.getDanmakuCount() + delta.getDanmakuCount()));
+        }
         return Result.data(response);
     }
     /**
@@ -131,14 +157,80 @@ public class PlayServiceImpl implements PlayService {
     @Override
     public Result<List<FirstPageVideoResponse>> getFirstPageVideoResponse(Integer count) {
         //获取首页视频，并每次跳过前面十条防止刷出重复视频
-        List<FirstPageVideoResponse> responses=videoServiceMapper.getFirstPageVideo(count-1);
-        return Result.data(responses);
+        List<FirstPageVideoResponse> responses=feedCacheService.getFirstPage(count-1);
+        return Result.data(withLiveCounts(responses));
+    }
+    /**
+     *按游标获取首页视频，游标是上一页最后一个视频id的Base64编码，翻到多深都只读一页的行
+     */
+    @Override
+    public Result<FeedVideoResponse> getFeedVideo(String cursor, Integer size) {
+        Integer lastId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                lastId = Integer.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                return Result.error("游标无效");
+            }
+        }
+        int pageSize = Math.max(1, Math.min(size == null ? FEED_PAGE_SIZE : size, FEED_MAX_PAGE_SIZE));
+        FeedVideoResponse page = feedCacheService.getFeedPage(lastId, pageSize);
+        return Result.data(new FeedVideoResponse().setVideos(withLiveCounts(page.getVideos()))
+                .setNextCursor(page.getNextCursor()).setHasMore(page.isHasMore()));
+    }
+    /**
+     *首页视频的计数：缓存里的值和本节点最近一次写库后读回的值取较大的，再加上尚未写库的增量，不查库；
+     *缓存中的对象是共享的，复制一份再改
+     */
+    private List<FirstPageVideoResponse> withLiveCounts(List<FirstPageVideoResponse> videos) {
+        List<FirstPageVideoResponse> result = new ArrayList<>(videos.size());
+        for (FirstPageVideoResponse video : videos) {
+            FirstPageVideoResponse copy = new FirstPageVideoResponse();
+            BeanUtils.copyProperties(video, copy);
+            long playCount = video.getPlayCount();
+            long danmakuCount = video.getDanmakuCount();
+            VideoData flushed = videoCounterService.flushedCounts(video.getVideoId());
+            if (flushed != null) {
+                playCount = Math.max(playCount, flushed.getPlayCount() == null ? 0 : flushed.getPlayCount());
+                danmakuCount = Math.max(danmakuCount, flushed.getDanmakuCount() == null ? 0 : flushed.getDanmakuCount());
+            }
+            VideoCounterDelta delta = videoCounterService.pending(video.getVideoId());
+            if (delta != null) {
+                playCount += delta.getPlayCount();
+                danmakuCount += delta.getDanmakuCount();
+            }
+            result.add(copy.setPlayCount((int) playCount).setDanmakuCount((int) danmakuCount));
+        }
+        return result;
     }
     /**
      *获取历史视频
      */
     @Override
     public Result<List<HistoryVideoResponse>> getHistoryVideo(int userId) {
-        return Result.data(videoServiceMapper.getHistoryVideo(userId));
+        //历史记录最多保留history.max-size条，旧接口一次返回全部
+        return Result.data(watchHistoryService.page(userId, null, null, historyMaxSize).getVideos());
+    }
+    /**
+     *按游标获取历史视频，游标是上一页最后一条“观看时间:视频id”的Base64编码
+     */
+    @Override
+    public Result<HistoryPageResponse> getHistoryPage(int userId, String cursor, Integer size) {
+        Long beforeTime = null;
+        Integer beforeVideoId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+                if (position.length != 2) {
+                    return Result.error("游标无效");
+                }
+                beforeTime = Long.valueOf(position[0]);
+                beforeVideoId = Integer.valueOf(position[1]);
+            } catch (IllegalArgumentException e) {
+                return Result.error("游标无效");
+            }
+        }
+        int pageSize = Math.max(1, Math.min(size == null ? HISTORY_PAGE_SIZE : size, HISTORY_MAX_PAGE_SIZE));
+        return Result.data(watchHistoryService.page(userId, beforeTime, beforeVideoId, pageSize));
     }
 }
@@ -0,0 +1,230 @@
+package ljl.bilibili.video.service.audience_reactions.play.impl;
+
+import cn.hutool.crypto.SecureUtil;
+import ljl.bilibili.video.service.audience_reactions.play.VideoBlockCacheService;
+import ljl.bilibili.video.service.video_production.MinioService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按固定大小分块缓存，块文件名为 对象名+ETag+块序号 的MD5，读取时用文件通道按位置读，不做内存映射，
+ * 块文件被淘汰删除后只有正在读它的请求短暂持有打开的句柄，磁盘占用不会超出预算太多。
+ * 索引是按访问顺序排列的LinkedHashMap，总大小超过磁盘预算时从最久未访问的块开始删除；
+ * 同一块同时未命中时只有第一个请求去MinIO读取，其余请求在限定时间内等待同一个结果，超时则直接从MinIO读取这一段。
+ * 启动时按修改时间把目录中已有的块文件重新加入索引，重启后缓存仍然有效。
+ */
+@Service
+@Slf4j
+public class VideoBlockCacheServiceImpl implements VideoBlockCacheService {
+    private static final String BLOCK_SUFFIX = ".blk";
+    private static final String TEMP_SUFFIX = ".tmp";
+    @Resource
+    MinioService minioService;
+    @Value("${play.cache.dir:${java.io.tmpdir}/video-block-cache}")
+    private String directory;
+    @Value("${play.cache.block-size:1048576}")
+    private int blockSize;
+    @Value("${play.cache.max-bytes:10737418240}")
+    private long maxBytes;
+    @Value("${play.cache.load-timeout-ms:10000}")
+    private long loadTimeoutMs;
+    @Value("${play.stream.buffer-size:65536}")
+    private int bufferSize;
+    private Path root;
+    /**
+     * 块的键-块文件大小
+     */
+    private final LinkedHashMap<String, Long> blocks = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> loading = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+        File[] files = root.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // 上次写到一半的块
+                file.delete();
+            } else if (name.endsWith(BLOCK_SUFFIX)) {
+                put(name.substring(0, name.length() - BLOCK_SUFFIX.length()), file.length());
+            }
+        }
+        log.info("视频分块缓存已加载" + blocks.size() + "块，共" + totalBytes + "字节");
+    }
+
+    @Override
+    public void write(String objectName, String etag, long size, long start, long end, OutputStream out) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        for (long index = start / blockSize; index * blockSize <= end; index++) {
+            long blockStart = index * blockSize;
+            int blockLength = (int) Math.min(blockSize, size - blockStart);
+            long from = Math.max(start, blockStart);
+            long to = Math.min(end, blockStart + blockLength - 1);
+            Path block = block(objectName, etag, index, blockStart, blockLength);
+            if (block == null || !copy(block, from - blockStart, to - from + 1, buffer, out)) {
+                // 等待加载超时，或块刚被淘汰删除，这一段直接从MinIO读取
+                try (InputStream in = minioService.getObject(objectName, from, to - from + 1)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * 从块文件的指定位置读出length字节写给客户端，块文件已不存在时返回false
+     */
+    private static boolean copy(Path block, long position, long length, byte[] buffer, OutputStream out) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(block, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer, 0, (int) Math.min(remaining, buffer.length));
+                int read = channel.read(wrapped, position);
+                if (read < 0) {
+                    throw new IOException("缓存块不完整：" + block);
+                }
+                out.write(buffer, 0, read);
+                position += read;
+                remaining -= read;
+            }
+            return true;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 返回块文件路径，未缓存时加载；等待其他请求加载超时返回null
+     */
+    private Path block(String objectName, String etag, long index, long blockStart, int blockLength) throws IOException {
+        String key = SecureUtil.md5(objectName + "\n" + etag + "\n" + index);
+        if (contains(key)) {
+            return pathOf(key);
+        }
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // 抢到加载权之前可能刚有别的请求加载完
+            Path block = pathOf(key);
+            if (!contains(key)) {
+                long length = load(key, objectName, blockStart, blockLength);
+                put(key, length);
+            }
+            future.complete(block);
+            return block;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 先写临时文件再原子改名，读到的块文件总是完整的
+     */
+    private long load(String key, String objectName, long blockStart, int blockLength) throws IOException {
+        Path temp = Files.createTempFile(root, key, TEMP_SUFFIX);
+        try (InputStream in = minioService.getObject(objectName, blockStart, blockLength)) {
+            long copied = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (copied != blockLength) {
+                throw new IOException("读取视频块不完整：" + objectName + "@" + blockStart);
+            }
+            Files.move(temp, pathOf(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return copied;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path pathOf(String key) {
+        return root.resolve(key + BLOCK_SUFFIX);
+    }
+
+    private synchronized boolean contains(String key) {
+        return blocks.get(key) != null;
+    }
+
+    /**
+     * 淘汰时直接删除块文件，正在读它的请求各自持有一次块读取期间的句柄，读完即关闭
+     */
+    private synchronized void put(String key, long length) {
+        Long previous = blocks.put(key, length);
+        totalBytes += length - (previous == null ? 0 : previous);
+        Iterator<Map.Entry<String, Long>> iterator = blocks.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            try {
+                Files.deleteIfExists(pathOf(eldest.getKey()));
+            } catch (IOException e) {
+                log.warn("删除缓存块失败：" + eldest.getKey());
+            }
+        }
+    }
+
+    private Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get(loadTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待视频块加载被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new UncheckedIOException(new IOException(cause));
+        }
+    }
+}
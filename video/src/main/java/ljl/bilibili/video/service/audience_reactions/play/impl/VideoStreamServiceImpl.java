@@ -0,0 +1,199 @@
+package ljl.bilibili.video.service.audience_reactions.play.impl;
+
+import io.minio.StatObjectResponse;
+import ljl.bilibili.video.service.audience_reactions.play.VideoBlockCacheService;
+import ljl.bilibili.video.service.audience_reactions.play.VideoStreamService;
+import ljl.bilibili.video.service.video_production.MinioService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 只向MinIO请求客户端要的那一段，用固定大小的缓冲区边读边写，不在内存中缓存整段内容；开启分块缓存时经由本节点磁盘缓存读取。
+ * ETag和Last-Modified取自MinIO对象，转码覆盖原文件后ETag随之变化，If-Range不匹配时返回整个文件，避免拼接出新旧混杂的内容。
+ */
+@Service
+@Slf4j
+public class VideoStreamServiceImpl implements VideoStreamService {
+    @Resource
+    MinioService minioService;
+    @Resource
+    VideoBlockCacheService videoBlockCacheService;
+    @Value("${play.cache.enabled:true}")
+    private boolean cacheEnabled;
+    @Value("${play.stream.buffer-size:65536}")
+    private int bufferSize;
+    @Value("${play.stream.max-age-seconds:60}")
+    private int maxAgeSeconds;
+
+    @Override
+    public void stream(String objectName, HttpServletRequest request, HttpServletResponse response) {
+        StatObjectResponse stat = minioService.statVideo(objectName);
+        if (stat == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        long size = stat.size();
+        String etag = "\"" + stat.etag() + "\"";
+        // HTTP日期精确到秒
+        long lastModified = stat.lastModified().toInstant().toEpochMilli() / 1000 * 1000;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + maxAgeSeconds);
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(stat.contentType() != null ? stat.contentType() : "video/mp4");
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+            // 多个范围或格式错误时按规范忽略Range，返回整个文件
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+        if (cacheEnabled) {
+            try {
+                videoBlockCacheService.write(objectName, stat.etag(), size, start, end, response.getOutputStream());
+            } catch (IOException e) {
+                log.debug("播放连接中断：" + objectName);
+            }
+            return;
+        }
+        try (InputStream in = minioService.getObject(objectName, start, length)) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // 拖动进度条时浏览器会中断上一个请求
+            log.debug("播放连接中断：" + objectName);
+        }
+    }
+
+    /**
+     * If-None-Match优先于If-Modified-Since
+     */
+    private boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if ("*".equals(trimmed) || etag.equals(trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * If-Range为ETag时强比较，为日期时要求与修改时间相同；没有If-Range时Range总是生效
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag.equals(ifRange.trim());
+        }
+        return dateHeader(request, HttpHeaders.IF_RANGE) == lastModified;
+    }
+
+    /**
+     * 解析bytes=start-end、bytes=start-、bytes=-suffix，返回闭区间；多个范围或格式错误时返回空数组以忽略Range，
+     * 格式正确但无法满足时返回null
+     */
+    private long[] parseRange(String range, long size) {
+        if (!range.startsWith("bytes=")) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (spec.contains(",") || dash < 0) {
+            return new long[0];
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        if (first.isEmpty() && last.isEmpty() || !isDigits(first) || !isDigits(last)) {
+            return new long[0];
+        }
+        long start;
+        long end;
+        try {
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix == 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (!last.isEmpty() && Long.parseLong(last) < start) {
+                    return new long[0];
+                }
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+        } catch (NumberFormatException e) {
+            // 数字超出long范围
+            return new long[0];
+        }
+        if (start >= size) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * 空串视为合法，由调用方判断两端是否都为空
+     */
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ljl.bilibili.video.service.audience_reactions.play.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import ljl.bilibili.entity.video.audience_reactions.play.Play;
+import ljl.bilibili.mapper.video.audience_reactions.play.PlayMapper;
+import ljl.bilibili.video.mapper.VideoServiceMapper;
+import ljl.bilibili.video.service.audience_reactions.play.WatchHistoryService;
+import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryPageResponse;
+import ljl.bilibili.video.vo.response.audience_reactions.play.HistoryVideoResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static ljl.bilibili.video.constant.Constant.HISTORY_KEY;
+
+/**
+ * 有序集合的成员是视频id，分数是最后观看时间的毫秒数；分页按分数倒序、同分按成员倒序，游标是上一页最后一条的(分数,成员)，
+ * 从play表重建的记录只精确到秒，同一秒可能有多条，所以同分的记录按成员跳过已返回的部分，
+ * 一页的视频卡片用一条IN查询取回
+ */
+@Service
+@Slf4j
+public class WatchHistoryServiceImpl implements WatchHistoryService {
+    /**
+     * 写入若干(分数,成员)，已有成员只在新分数更大时更新，然后裁掉超出上限的最早记录并续期；
+     * ARGV[3]为1时集合不存在则不写，留给重建时从冷存储整体加载
+     */
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[3] == '1' and redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+                    "for i = 4, #ARGV, 2 do " +
+                    "local old = redis.call('ZSCORE', KEYS[1], ARGV[i + 1]) " +
+                    "if not old or tonumber(old) < tonumber(ARGV[i]) then redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+                    "end " +
+                    "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[1]) - 1) " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+                    "return 1", Long.class);
+    @Resource
+    RedisTemplate<String, String> redisTemplate;
+    @Resource
+    PlayMapper playMapper;
+    @Resource
+    VideoServiceMapper videoServiceMapper;
+    @Value("${history.max-size:500}")
+    int maxSize;
+    @Value("${history.ttl-days:30}")
+    long ttlDays;
+
+    @Override
+    public void add(int userId, int videoId, long watchTime) {
+        try {
+            Long added = write(userId, true, String.valueOf(watchTime), String.valueOf(videoId));
+            if (added == null || added == 0) {
+                //集合不存在时先从冷存储重建，再写入这次观看，避免集合里只剩这一条
+                warm(userId, String.valueOf(watchTime), String.valueOf(videoId));
+            }
+        } catch (Exception e) {
+            //play表中仍有记录，集合过期或被删除后会重建
+            log.warn("写入观看历史失败：" + e.getMessage());
+        }
+    }
+
+    @Override
+    public void remove(int userId, int videoId) {
+        try {
+            redisTemplate.opsForZSet().remove(HISTORY_KEY + userId, String.valueOf(videoId));
+        } catch (Exception e) {
+            log.warn("移除观看历史失败：" + e.getMessage());
+        }
+    }
+
+    @Override
+    public HistoryPageResponse page(int userId, Long beforeTime, Integer beforeVideoId, int size) {
+        String key = HISTORY_KEY + userId;
+        double max = beforeTime == null ? Double.POSITIVE_INFINITY : beforeTime;
+        long skip = 0;
+        if (beforeTime != null) {
+            // 和上一页最后一条同分的记录中，成员不小于它的已经返回过（同分时redis按成员字节序倒序排列）
+            Set<String> ties = redisTemplate.opsForZSet().rangeByScore(key, max, max);
+            String lastMember = String.valueOf(beforeVideoId);
+            if (ties != null) {
+                skip = ties.stream().filter(member -> member.compareTo(lastMember) >= 0).count();
+            }
+        }
+        // 多取一条判断是否还有下一页
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(key, Double.NEGATIVE_INFINITY, max, skip, size + 1);
+        if ((tuples == null || tuples.isEmpty()) && beforeTime == null && !Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+            warm(userId);
+            tuples = redisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, Double.NEGATIVE_INFINITY, max, 0, size + 1);
+        }
+        List<ZSetOperations.TypedTuple<String>> entries = tuples == null ? Collections.emptyList() : new ArrayList<>(tuples);
+        boolean hasMore = entries.size() > size;
+        if (hasMore) {
+            entries = entries.subList(0, size);
+        }
+        List<Integer> ids = new ArrayList<>(entries.size());
+        for (ZSetOperations.TypedTuple<String> entry : entries) {
+            ids.add(Integer.valueOf(entry.getValue()));
+        }
+        Map<Integer, HistoryVideoResponse> cards = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (HistoryVideoResponse card : videoServiceMapper.getHistoryVideoCards(ids)) {
+                cards.put(card.getVideoId(), card);
+            }
+        }
+        //按集合中的顺序组装，已删除的视频跳过
+        List<HistoryVideoResponse> videos = new ArrayList<>(entries.size());
+        for (ZSetOperations.TypedTuple<String> entry : entries) {
+            HistoryVideoResponse card = cards.get(Integer.valueOf(entry.getValue()));
+            if (card != null) {
+                card.setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getScore().longValue()), ZoneId.systemDefault()));
+                videos.add(card);
+            }
+        }
+        ZSetOperations.TypedTuple<String> last = hasMore ? entries.get(entries.size() - 1) : null;
+        String nextCursor = last == null ? null : Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (last.getScore().longValue() + ":" + last.getValue()).getBytes(StandardCharsets.UTF_8));
+        return new HistoryPageResponse().setVideos(videos).setNextCursor(nextCursor).setHasMore(hasMore);
+    }
+
+    /**
+     * 从play表加载最近的max-size条记录重建集合，extra为额外写入的(分数,成员)
+     */
+    private void warm(int userId, String... extra) {
+        LambdaQueryWrapper<Play> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(Play::getVideoId, Play::getCreateTime);
+        wrapper.eq(Play::getUserId, userId);
+        wrapper.orderByDesc(Play::getCreateTime);
+        wrapper.last("limit " + maxSize);
+        List<Play> plays = playMapper.selectList(wrapper);
+        String[] pairs = new String[plays.size() * 2 + extra.length];
+        int i = 0;
+        for (Play play : plays) {
+            if (play.getCreateTime() == null) {
+                continue;
+            }
+            pairs[i++] = String.valueOf(play.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            pairs[i++] = String.valueOf(play.getVideoId());
+        }
+        System.arraycopy(extra, 0, pairs, i, extra.length);
+        i += extra.length;
+        if (i > 0) {
+            write(userId, false, Arrays.copyOf(pairs, i));
+        }
+    }
+
+    private Long write(int userId, boolean requireExisting, String... pairs) {
+        String[] args = new String[pairs.length + 3];
+        args[0] = String.valueOf(maxSize);
+        args[1] = String.valueOf(TimeUnit.DAYS.toMillis(ttlDays));
+        args[2] = requireExisting ? "1" : "0";
+        System.arraycopy(pairs, 0, args, 3, pairs.length);
+        return redisTemplate.execute(ADD_SCRIPT, Collections.singletonList(HISTORY_KEY + userId), (Object[]) args);
+    }
+}
@@ -0,0 +1,23 @@
+package ljl.bilibili.video.service.video_production;
+
+import java.io.File;
+
+/**
+ * 上传视频时异步截取封面，每个上传会话只截取一次
+ */
+public interface CoverService {
+    /**
+     * 提交第一个分片的截取封面任务，同一个上传会话重复提交会被忽略；提交后分片文件由封面任务负责删除
+     */
+    void submit(String resumableIdentifier, File firstChunk);
+
+    /**
+     * 获取封面在video-cover桶中的暂存对象名，尚未生成返回null
+     */
+    String getCover(String resumableIdentifier);
+
+    /**
+     * 获取封面生成状态：pending、ready、failed，尚未提交返回null
+     */
+    String getCoverState(String resumableIdentifier);
+}
@@ -1,17 +1,51 @@
 package ljl.bilibili.video.service.video_production;
 
+import io.minio.StatObjectResponse;
 import io.minio.errors.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.SortedMap;
 
 public interface MinioService {
-    Boolean uploadVideoFile(String fileName, InputStream stream, String contentType);
+    Boolean uploadVideoFile(String fileName, MultipartFile file, String contentType);
 
-    Boolean uploadImgFile(String fileName, InputStream stream, String contentType);
+    Boolean uploadVideoFile(String fileName, File file, String contentType);
+
+    Boolean uploadImgFile(String fileName, MultipartFile file, String contentType);
+
+    Boolean uploadImgFile(String fileName, File file, String contentType);
 
     InputStream getObject(String objectName);
-    Boolean composePart(String resumableIdentifier,String name) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException;
+
+    InputStream getObject(String objectName, long offset, long length);
+
+    /**
+     * 视频对象的大小、ETag和修改时间，对象不存在时返回null
+     */
+    StatObjectResponse statVideo(String objectName);
+
+    Boolean promoteCover(String stagedName, String coverName);
+    Boolean composePart(List<String> partNames,String name) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException;
+
+    String createMultipartUpload(String objectName, String contentType);
+
+    String uploadPart(String objectName, String uploadId, int partNumber, File file);
+
+    Boolean completeMultipartUpload(String objectName, String uploadId, SortedMap<Integer, String> partETags);
+
+    Boolean abortMultipartUpload(String objectName, String uploadId);
+
+    String presignUploadPart(String objectName, String uploadId, int partNumber, int expirySeconds);
+
+    SortedMap<Integer, String> listUploadedParts(String objectName, String uploadId);
+
+    int removeVideoObjects(List<String> objectNames);
+
+    int removeCoverObjects(List<String> objectNames);
 }
@@ -0,0 +1,16 @@
+package ljl.bilibili.video.service.video_production;
+
+/**
+ * 事务发件箱：事务内只写事件记录，对外调用在事务提交后由中继执行，失败时按退避时间重试
+ */
+public interface OutboxService {
+    /**
+     * 在当前事务中写入事件，事务提交后按写入顺序异步中继；事务回滚时事件一并回滚
+     */
+    void add(String eventType, Object payload);
+
+    /**
+     * 补发到期未成功的事件，包括提交后中继失败的和节点在中继前宕机遗留的
+     */
+    void relayPending();
+}
@@ -5,6 +5,7 @@ import ljl.bilibili.video.vo.request.video_production.DeleteVideoRequest;
 import ljl.bilibili.video.vo.request.video_production.EditVideoRequest;
 import ljl.bilibili.video.vo.request.video_production.UploadPartRequest;
 import ljl.bilibili.video.vo.request.video_production.UploadVideoRequest;
+import ljl.bilibili.video.vo.response.video_production.PresignedUploadResponse;
 import ljl.bilibili.video.vo.response.video_production.UploadProcessorResponse;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -25,4 +26,16 @@ public interface UploadAndEditService {
     Result<List<String>> uploadPart(@ModelAttribute UploadPartRequest uploadPartRequest) throws IOException, EncoderException, ServerException, InsufficientDataException, ErrorResponseException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException;
 
     ResponseEntity<Result<Boolean>> getProcessor(String resumableIdentifier,Integer resumableChunkNumber);
+
+    ResponseEntity<Result<String>> getCover(String resumableIdentifier);
+
+    ResponseEntity<Result<String>> instantUpload(String resumableIdentifier, String fingerprint);
+
+    Result<Boolean> verifyInstantUpload(String resumableIdentifier, String proof);
+
+    ResponseEntity<Result<UploadProcessorResponse>> getResumeMap(String resumableIdentifier, Integer resumableTotalChunks);
+
+    Result<PresignedUploadResponse> createPresignedUpload(String resumableIdentifier, Integer resumableTotalChunks);
+
+    Result<List<String>> completePresignedUpload(String resumableIdentifier);
 }
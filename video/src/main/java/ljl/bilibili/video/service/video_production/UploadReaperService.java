@@ -0,0 +1,10 @@
+package ljl.bilibili.video.service.video_production;
+
+import ljl.bilibili.video.pojo.UploadReapReport;
+
+/**
+ * 回收放弃的上传遗留的分片对象、S3分片上传、暂存封面和本地临时文件
+ */
+public interface UploadReaperService {
+    UploadReapReport reap();
+}
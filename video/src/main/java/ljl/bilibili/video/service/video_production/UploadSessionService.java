@@ -0,0 +1,50 @@
+package ljl.bilibili.video.service.video_production;
+
+import ljl.bilibili.video.pojo.UploadPart;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * 分片上传会话存储，一个文件标识符对应一个会话，会话在最后一次写入后超过ttl即被淘汰
+ */
+public interface UploadSessionService {
+    /**
+     * 原子地登记一个分片，分片重传时覆盖原来的分片名称（或ETag）
+     * @return 登记后已上传的分片数；该分片已登记过则返回-1
+     */
+    int registerPart(String resumableIdentifier, int chunkNumber, String partName);
+
+    /**
+     * 分片是否已上传，O(1)
+     */
+    boolean hasPart(String resumableIdentifier, int chunkNumber);
+
+    /**
+     * 按分片序号升序返回 分片序号-分片名称
+     */
+    SortedMap<Integer, String> getParts(String resumableIdentifier);
+
+    String getAttribute(String resumableIdentifier, String key);
+
+    /**
+     * 一次取出会话的全部属性
+     */
+    Map<String, String> getAttributes(String resumableIdentifier);
+
+    void setAttribute(String resumableIdentifier, String key, String value);
+
+    /**
+     * 属性不存在时才写入
+     * @return 是否写入成功
+     */
+    boolean setAttributeIfAbsent(String resumableIdentifier, String key, String value);
+
+    void remove(String resumableIdentifier);
+
+    /**
+     * 取出并删除最多limit个已过期的会话，交给回收任务清理会话遗留的分片和封面
+     * @return 文件标识符-会话内容
+     */
+    Map<String, UploadPart> pollExpired(int limit);
+}
@@ -0,0 +1,35 @@
+package ljl.bilibili.video.service.video_production;
+
+import java.util.Map;
+
+/**
+ * 视频文件指纹索引，用于秒传：内容相同的视频只在minio中存一份
+ */
+public interface VideoFingerprintService {
+    /**
+     * 由各分片的SHA-256计算整个文件的指纹：按分片序号拼接各分片摘要的十六进制串再做一次SHA-256
+     * @param attributes 上传会话属性，其中 digest:分片序号 为该分片的摘要
+     * @return 文件指纹，缺少任一分片的摘要时返回null
+     */
+    String fingerprint(Map<String, String> attributes, int totalChunks);
+
+    /**
+     * 查找指纹对应的已有视频文件名，不存在返回null
+     */
+    String find(String fingerprint);
+
+    /**
+     * 登记指纹，同时登记文件名-指纹的反向索引，供转码服务覆盖文件前保留原始副本
+     */
+    void record(String fingerprint, String objectName);
+
+    /**
+     * 删除该文件的指纹登记（指纹已指向其他文件时不删），返回需要一并删除的原始副本名，没有时返回null
+     */
+    String remove(String objectName);
+
+    /**
+     * 秒传校验读取的对象：文件被转码或重新封装覆盖过时为保留的原始副本，否则为文件本身
+     */
+    String proofObject(String fingerprint, String objectName);
+}
@@ -0,0 +1,91 @@
+package ljl.bilibili.video.service.video_production.impl;
+
+import cn.hutool.core.io.FileUtil;
+import ljl.bilibili.video.service.video_production.CoverService;
+import ljl.bilibili.video.service.video_production.MinioService;
+import ljl.bilibili.video.service.video_production.UploadSessionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import ws.schild.jave.MultimediaObject;
+import ws.schild.jave.ScreenExtractor;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.RejectedExecutionException;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 在有界线程池中用JAVE从第一个分片截取第1000ms的画面作为封面，直接写入video-cover桶的暂存对象，
+ * 上传会话中只记录暂存对象名；是否已提交记录在上传会话中，多个实例之间也不会重复截取
+ */
+@Slf4j
+@Service
+public class CoverServiceImpl implements CoverService {
+    @Resource
+    UploadSessionService uploadSessionService;
+    @Resource
+    ThreadPoolTaskExecutor coverExecutor;
+    @Resource
+    MinioService minioService;
+
+    @Override
+    public void submit(String resumableIdentifier, File firstChunk) {
+        if (!uploadSessionService.setAttributeIfAbsent(resumableIdentifier, UPLOAD_COVER_STATE, COVER_STATE_PENDING)) {
+            firstChunk.delete();
+            return;
+        }
+        File directory = null;
+        try {
+            // 分片已转存在本地磁盘上，直接移动到截取封面的临时目录
+            directory = Files.createTempDirectory(UPLOAD_TEMP_PREFIX).toFile();
+            File videoFile = new File(directory, "video");
+            Files.move(firstChunk.toPath(), videoFile.toPath());
+            File workDirectory = directory;
+            coverExecutor.execute(() -> extract(resumableIdentifier, workDirectory, videoFile));
+        } catch (RejectedExecutionException e) {
+            log.warn("截取封面线程池已满，跳过截取封面：" + resumableIdentifier);
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_COVER_STATE, COVER_STATE_FAILED);
+            FileUtil.del(directory);
+        } catch (Exception e) {
+            log.error("暂存第一个分片失败：" + e.getMessage());
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_COVER_STATE, COVER_STATE_FAILED);
+            firstChunk.delete();
+            FileUtil.del(directory);
+        }
+    }
+
+    @Override
+    public String getCover(String resumableIdentifier) {
+        return uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_COVER);
+    }
+
+    @Override
+    public String getCoverState(String resumableIdentifier) {
+        return uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_COVER_STATE);
+    }
+
+    private void extract(String resumableIdentifier, File directory, File videoFile) {
+        try {
+            File coverFile = new File(directory, "cover.jpg");
+            // 参数：视频对象、宽(-1保持原宽)、高(-1保持原高)、提取时间(ms)、输出文件、质量
+            new ScreenExtractor().renderOneImage(new MultimediaObject(videoFile), -1, -1, 1000, coverFile, 1);
+            if (!coverFile.exists()) {
+                uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_COVER_STATE, COVER_STATE_FAILED);
+                return;
+            }
+            String stagedCover = COVER_STAGING_PREFIX + resumableIdentifier + ".jpg";
+            minioService.uploadImgFile(stagedCover, coverFile, JPEG_TYPE);
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_COVER, stagedCover);
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_COVER_STATE, COVER_STATE_READY);
+            log.info("封面文件生成成功：" + resumableIdentifier);
+        } catch (Exception e) {
+            log.error("截取封面失败：" + e.getMessage());
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_COVER_STATE, COVER_STATE_FAILED);
+        } finally {
+            FileUtil.del(directory);
+        }
+    }
+}
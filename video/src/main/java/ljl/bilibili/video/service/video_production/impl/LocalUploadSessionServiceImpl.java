@@ -0,0 +1,174 @@
+package ljl.bilibili.video.service.video_production.impl;
+
+import ljl.bilibili.video.pojo.UploadPart;
+import ljl.bilibili.video.service.video_production.UploadSessionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单机内存实现，按文件标识符分段加锁，只适用于单实例部署；过期会话由回收任务取出清理
+ */
+@Service
+@ConditionalOnProperty(name = "upload.session.store", havingValue = "local", matchIfMissing = true)
+public class LocalUploadSessionServiceImpl implements UploadSessionService {
+    private static final int STRIPES = 64;
+    private final Map<String, UploadPart> sessionMap = new ConcurrentHashMap<>();
+    /**
+     * 回收前就被同一标识符的新请求顶替掉的过期会话，等回收任务取走清理其uploadId和分片对象
+     */
+    private final Queue<Map.Entry<String, UploadPart>> displaced = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    @Value("${upload.session.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    public LocalUploadSessionServiceImpl() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public int registerPart(String resumableIdentifier, int chunkNumber, String partName) {
+        ReentrantLock lock = lockOf(resumableIdentifier);
+        lock.lock();
+        try {
+            UploadPart uploadPart = touch(resumableIdentifier);
+            if (uploadPart.getPartMap().put(chunkNumber, partName) != null) {
+                return -1;
+            }
+            return uploadPart.getPartMap().size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean hasPart(String resumableIdentifier, int chunkNumber) {
+        UploadPart uploadPart = get(resumableIdentifier);
+        return uploadPart != null && uploadPart.getPartMap().containsKey(chunkNumber);
+    }
+
+    @Override
+    public SortedMap<Integer, String> getParts(String resumableIdentifier) {
+        UploadPart uploadPart = get(resumableIdentifier);
+        return uploadPart == null ? new TreeMap<>() : new TreeMap<>(uploadPart.getPartMap());
+    }
+
+    @Override
+    public String getAttribute(String resumableIdentifier, String key) {
+        UploadPart uploadPart = get(resumableIdentifier);
+        return uploadPart == null ? null : uploadPart.getAttributeMap().get(key);
+    }
+
+    @Override
+    public Map<String, String> getAttributes(String resumableIdentifier) {
+        UploadPart uploadPart = get(resumableIdentifier);
+        return uploadPart == null ? new HashMap<>() : new HashMap<>(uploadPart.getAttributeMap());
+    }
+
+    @Override
+    public void setAttribute(String resumableIdentifier, String key, String value) {
+        ReentrantLock lock = lockOf(resumableIdentifier);
+        lock.lock();
+        try {
+            touch(resumableIdentifier).getAttributeMap().put(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean setAttributeIfAbsent(String resumableIdentifier, String key, String value) {
+        ReentrantLock lock = lockOf(resumableIdentifier);
+        lock.lock();
+        try {
+            return touch(resumableIdentifier).getAttributeMap().putIfAbsent(key, value) == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String resumableIdentifier) {
+        ReentrantLock lock = lockOf(resumableIdentifier);
+        lock.lock();
+        try {
+            sessionMap.remove(resumableIdentifier);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, UploadPart> pollExpired(int limit) {
+        Map<String, UploadPart> expired = new HashMap<>();
+        Map.Entry<String, UploadPart> entry;
+        // 被顶替的会话同一标识符可能有多个，键后加序号区分
+        while (expired.size() < limit && (entry = displaced.poll()) != null) {
+            expired.put(entry.getKey() + "#" + expired.size(), entry.getValue());
+        }
+        for (String resumableIdentifier : sessionMap.keySet()) {
+            if (expired.size() >= limit) {
+                break;
+            }
+            ReentrantLock lock = lockOf(resumableIdentifier);
+            lock.lock();
+            try {
+                UploadPart uploadPart = sessionMap.get(resumableIdentifier);
+                if (uploadPart != null && isExpired(uploadPart)) {
+                    sessionMap.remove(resumableIdentifier);
+                    expired.put(resumableIdentifier, uploadPart);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 获取未过期的会话，不存在返回null
+     */
+    private UploadPart get(String resumableIdentifier) {
+        UploadPart uploadPart = sessionMap.get(resumableIdentifier);
+        return uploadPart == null || isExpired(uploadPart) ? null : uploadPart;
+    }
+
+    /**
+     * 获取或新建会话并刷新最后写入时间，调用方需持有分段锁
+     */
+    private UploadPart touch(String resumableIdentifier) {
+        UploadPart uploadPart = get(resumableIdentifier);
+        if (uploadPart == null) {
+            UploadPart stale = sessionMap.get(resumableIdentifier);
+            if (stale != null) {
+                // 过期会话还没被回收，先交给回收任务，否则新会话覆盖后它的uploadId和分片对象就再也清理不到了
+                displaced.add(new AbstractMap.SimpleEntry<>(resumableIdentifier, stale));
+            }
+            uploadPart = new UploadPart();
+            sessionMap.put(resumableIdentifier, uploadPart);
+        }
+        uploadPart.setLastAccessTime(System.currentTimeMillis());
+        return uploadPart;
+    }
+
+    private boolean isExpired(UploadPart uploadPart) {
+        return System.currentTimeMillis() - uploadPart.getLastAccessTime() > TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    private ReentrantLock lockOf(String resumableIdentifier) {
+        return locks[(resumableIdentifier.hashCode() & 0x7fffffff) % STRIPES];
+    }
+}
@@ -2,21 +2,34 @@ package ljl.bilibili.video.service.video_production.impl;
 
 import io.minio.*;
 import io.minio.errors.*;
-import io.swagger.models.auth.In;
-import ljl.bilibili.video.pojo.UploadPart;
+import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Part;
+import ljl.bilibili.video.config.CustomMinioClient;
 import ljl.bilibili.video.service.video_production.MinioService;
+import ljl.bilibili.video.util.UploadFileUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static ljl.bilibili.video.constant.Constant.*;
 /**
@@ -27,64 +40,247 @@ import static ljl.bilibili.video.constant.Constant.*;
 public class MinioServiceImpl implements MinioService {
 
     @Autowired
-    private MinioClient minioClient;
+    private CustomMinioClient minioClient;
+    @Value("${upload.max-concurrent:8}")
+    private int maxConcurrentUploads;
+    @Value("${upload.acquire-timeout-seconds:30}")
+    private long acquireTimeoutSeconds;
+    private Semaphore uploadPermits;
+
+    @PostConstruct
+    public void init() {
+        uploadPermits = new Semaphore(maxConcurrentUploads, true);
+    }
 
     /**
      *合成分片
      */
     @Override
-    public Boolean composePart(String resumableIdentifier,String name) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+    public Boolean composePart(List<String> partNames,String name) throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
         List<ComposeSource> composeSourceList=new ArrayList<>();
-        //获取分片信息并封装成ComposeSource类的集合，合并到一起
-        // getPartMap中存储了分片索引--> 分片文件名的映射
-        // 获取所有分片文件组成List，使用composeObject合并视频文件
-        for(Map.Entry<Integer,String> entry : uploadPartMap.get(resumableIdentifier).getPartMap().entrySet()){
-            composeSourceList.add(ComposeSource.builder().bucket("video").object(entry.getValue()).build());
+        //按分片序号排好序的分片文件名封装成ComposeSource类的集合，使用composeObject合并视频文件
+        for(String partName : partNames){
+            composeSourceList.add(ComposeSource.builder().bucket("video").object(partName).build());
         }
         minioClient.composeObject(ComposeObjectArgs.builder().sources(composeSourceList).object(name).bucket("video").build());
         return true;
     }
     /**
-     *上传视频文件
+     *初始化S3分片上传，返回uploadId
+     */
+    @Override
+    public String createMultipartUpload(String objectName, String contentType) {
+        try {
+            return minioClient.initMultipartUpload("video", objectName, contentType);
+        } catch (Exception e) {
+            throw new RuntimeException("初始化分片上传失败", e);
+        }
+    }
+    /**
+     *从本地文件上传一个分片，返回分片的ETag
+     */
+    @Override
+    public String uploadPart(String objectName, String uploadId, int partNumber, File file) {
+        acquireUploadPermit();
+        try (RandomAccessFile partFile = new RandomAccessFile(file, "r")) {
+            return minioClient.uploadMultipartPart("video", objectName, uploadId, partNumber, partFile, Math.toIntExact(partFile.length()));
+        } catch (Exception e) {
+            throw new RuntimeException("上传失败", e);
+        } finally {
+            uploadPermits.release();
+        }
+    }
+    /**
+     *按分片序号合并分片
+     * @param partETags 分片序号-ETag
+     */
+    @Override
+    public Boolean completeMultipartUpload(String objectName, String uploadId, SortedMap<Integer, String> partETags) {
+        Part[] parts = new Part[partETags.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : partETags.entrySet()) {
+            parts[i++] = new Part(entry.getKey(), entry.getValue());
+        }
+        try {
+            minioClient.mergeMultipartUpload("video", objectName, uploadId, parts);
+            return true;
+        } catch (Exception e) {
+            throw new RuntimeException("合并分片失败", e);
+        }
+    }
+    /**
+     *取消分片上传，已上传的分片由MinIO清理
+     */
+    @Override
+    public Boolean abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            minioClient.cancelMultipartUpload("video", objectName, uploadId);
+            return true;
+        } catch (Exception e) {
+            log.error("取消分片上传失败：" + e.getMessage());
+            return false;
+        }
+    }
+    /**
+     *生成上传一个分片的预签名PUT地址，客户端直接上传到MinIO，不经过本服务
+     */
+    @Override
+    public String presignUploadPart(String objectName, String uploadId, int partNumber, int expirySeconds) {
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("uploadId", uploadId);
+        queryParams.put("partNumber", String.valueOf(partNumber));
+        try {
+            return minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder().method(Method.PUT)
+                    .bucket("video").object(objectName).expiry(expirySeconds).extraQueryParams(queryParams).build());
+        } catch (Exception e) {
+            throw new RuntimeException("生成预签名地址失败", e);
+        }
+    }
+    /**
+     *从MinIO列出已上传的分片
+     * @return 分片序号-ETag
+     */
+    @Override
+    public SortedMap<Integer, String> listUploadedParts(String objectName, String uploadId) {
+        SortedMap<Integer, String> partETags = new TreeMap<>();
+        try {
+            for (Part part : minioClient.listMultipartParts("video", objectName, uploadId)) {
+                partETags.put(part.partNumber(), part.etag());
+            }
+            return partETags;
+        } catch (Exception e) {
+            throw new RuntimeException("列出分片失败", e);
+        }
+    }
+    /**
+     *批量删除video桶中的对象
+     * @return 删除成功的数量
+     */
+    @Override
+    public int removeVideoObjects(List<String> objectNames) {
+        return removeObjects("video", objectNames);
+    }
+    /**
+     *批量删除video-cover桶中的对象
+     * @return 删除成功的数量
+     */
+    @Override
+    public int removeCoverObjects(List<String> objectNames) {
+        return removeObjects("video-cover", objectNames);
+    }
+
+    private int removeObjects(String bucket, List<String> objectNames) {
+        if (objectNames.isEmpty()) {
+            return 0;
+        }
+        List<DeleteObject> deleteObjects = new ArrayList<>(objectNames.size());
+        for (String objectName : objectNames) {
+            deleteObjects.add(new DeleteObject(objectName));
+        }
+        int failed = 0;
+        //removeObjects是惰性执行的，需要遍历结果才会真正发出删除请求
+        for (Result<DeleteError> result : minioClient.removeObjects(RemoveObjectsArgs.builder().bucket(bucket).objects(deleteObjects).build())) {
+            try {
+                DeleteError error = result.get();
+                log.error("删除对象失败：" + error.objectName() + " " + error.message());
+            } catch (Exception e) {
+                log.error("删除对象失败：" + e.getMessage());
+            }
+            failed++;
+        }
+        return objectNames.size() - failed;
+    }
+    /**
+     *上传视频文件，先把上传文件转存到本地再按已知长度上传
      * @param fileName 文件名
-     * @param stream 输入流
+     * @param file 上传文件
      * @param contentType 内容类型
-     * @return 上传成功返回true，失败返回false
+     * @return 上传成功返回true
+     */
+    @Override
+    public Boolean uploadVideoFile(String fileName, MultipartFile file, String contentType) {
+        return uploadMultipartFile("video", fileName, file, contentType);
+    }
+    /**
+     *上传本地视频文件
+     */
+    @Override
+    public Boolean uploadVideoFile(String fileName, File file, String contentType) {
+        return uploadLocalFile("video", fileName, file, contentType);
+    }
+    /**
+     *上传图片文件
      */
     @Override
-    public Boolean uploadVideoFile(String fileName, InputStream stream, String contentType) {
+    public Boolean uploadImgFile(String fileName, MultipartFile file, String contentType) {
+        return uploadMultipartFile("video-cover", fileName, file, contentType);
+    }
+    /**
+     *上传本地图片文件
+     */
+    @Override
+    public Boolean uploadImgFile(String fileName, File file, String contentType) {
+        return uploadLocalFile("video-cover", fileName, file, contentType);
+    }
+
+    private Boolean uploadMultipartFile(String bucket, String fileName, MultipartFile file, String contentType) {
+        File staged = null;
+        try {
+            staged = UploadFileUtil.stage(file);
+            return uploadLocalFile(bucket, fileName, staged, contentType);
+        } catch (IOException e) {
+            throw new RuntimeException("上传失败", e);
+        } finally {
+            if (staged != null) {
+                staged.delete();
+            }
+        }
+    }
+    /**
+     *按文件的实际长度从磁盘上传，客户端用RandomAccessFile分段读取，不在堆内缓冲整个分片
+     */
+    private Boolean uploadLocalFile(String bucket, String fileName, File file, String contentType) {
+        acquireUploadPermit();
         try {
-            minioClient.putObject(
-                    PutObjectArgs.builder().bucket("video").object(fileName)
-                            .stream(stream, -1, 10485760)
+            minioClient.uploadObject(
+                    UploadObjectArgs.builder().bucket(bucket).object(fileName)
+                            .filename(file.getAbsolutePath())
                             .contentType(contentType)
                             .build());
-
-            stream.close();
             return true;
         } catch (Exception e) {
             throw new RuntimeException("上传失败", e);
+        } finally {
+            uploadPermits.release();
         }
     }
     /**
-     *上传图片文件
+     *限制同时向MinIO上传的数量，等待超时说明上传过于繁忙
+     */
+    private void acquireUploadPermit() {
+        try {
+            if (!uploadPermits.tryAcquire(acquireTimeoutSeconds, TimeUnit.SECONDS)) {
+                throw new RuntimeException("上传繁忙，请稍后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("上传被中断", e);
+        }
+    }
+    /**
+     *服务端复制暂存封面为正式封面并删除暂存对象，图片不经过本服务
      */
     @Override
-    public   Boolean uploadImgFile(String fileName, InputStream stream, String contentType){
-
+    public Boolean promoteCover(String stagedName, String coverName) {
         try {
-            minioClient.putObject(
-                    PutObjectArgs.builder().bucket("video-cover").object(fileName)
-                            .stream(stream, -1, 10485760)
-                            .contentType(contentType)
-                            .build());
-
-            stream.close();
+            minioClient.copyObject(CopyObjectArgs.builder().bucket("video-cover").object(coverName)
+                    .source(CopySource.builder().bucket("video-cover").object(stagedName).build())
+                    .build());
+            minioClient.removeObject(RemoveObjectArgs.builder().bucket("video-cover").object(stagedName).build());
             return true;
-        } catch (Exception e){
-            e.printStackTrace();
+        } catch (Exception e) {
+            throw new RuntimeException("复制封面失败", e);
         }
-        return true;
     }
     /**
      *获取视频文件
@@ -102,6 +298,30 @@ public class MinioServiceImpl implements MinioService {
         }
         return null;
     }
+    /**
+     *按字节范围获取视频文件的一部分
+     */
+    @Override
+    public InputStream getObject(String objectName, long offset, long length) {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder().bucket("video").object(objectName).offset(offset).length(length).build());
+        } catch (Exception e) {
+            throw new RuntimeException("获取文件失败", e);
+        }
+    }
+    @Override
+    public StatObjectResponse statVideo(String objectName) {
+        try {
+            return minioClient.statObject(StatObjectArgs.builder().bucket("video").object(objectName).build());
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw new RuntimeException("获取文件信息失败", e);
+        } catch (Exception e) {
+            throw new RuntimeException("获取文件信息失败", e);
+        }
+    }
     /**
      *创建桶
      */
@@ -0,0 +1,213 @@
+package ljl.bilibili.video.service.video_production.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ljl.bilibili.client.notice.SendNoticeClient;
+import ljl.bilibili.client.pojo.UploadVideo;
+import ljl.bilibili.entity.notice.dynamic.Dynamic;
+import ljl.bilibili.entity.video.video_production.outbox.OutboxEvent;
+import ljl.bilibili.mapper.video.video_production.outbox.OutboxEventMapper;
+import ljl.bilibili.video.service.video_production.MinioService;
+import ljl.bilibili.video.service.video_production.OutboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 写入事件时把下次处理时间设为一个租约之后，提交后的即时中继和定时补发不会同时处理刚写入的事件；
+ * 处理前以读到的次数为条件把次数加一并再推后一个租约，多个节点只有一个能领取到同一事件。
+ * 同一事务写入的事件在同一线程按写入顺序中继，封面先转正再推送带封面的动态；
+ * 每个事件记录同一事务中的前一个事件，前一个失败时停止中继后续事件，定时补发也要等前一个发送成功才处理，前一个放弃则一并放弃。
+ */
+@Service
+@Slf4j
+public class OutboxServiceImpl implements OutboxService {
+    private static final String TRANSACTION_EVENTS = OutboxServiceImpl.class.getName() + ".events";
+    private static final int MAX_ERROR_LENGTH = 500;
+    @Resource
+    OutboxEventMapper outboxEventMapper;
+    @Resource
+    ObjectMapper objectMapper;
+    @Resource
+    SendNoticeClient client;
+    @Resource
+    MinioService minioService;
+    @Resource(name = "outboxExecutor")
+    ThreadPoolTaskExecutor outboxExecutor;
+    @Value("${outbox.lease-seconds:60}")
+    private long leaseSeconds;
+    @Value("${outbox.max-attempts:10}")
+    private int maxAttempts;
+    @Value("${outbox.backoff-seconds:5}")
+    private long backoffSeconds;
+    @Value("${outbox.max-backoff-seconds:600}")
+    private long maxBackoffSeconds;
+    @Value("${outbox.batch-size:100}")
+    private int batchSize;
+
+    @Override
+    public void add(String eventType, Object payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("事件序列化失败", e);
+        }
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        List<OutboxEvent> events = null;
+        if (inTransaction) {
+            @SuppressWarnings("unchecked")
+            List<OutboxEvent> bound = (List<OutboxEvent>) TransactionSynchronizationManager.getResource(TRANSACTION_EVENTS);
+            if (bound == null) {
+                List<OutboxEvent> registered = new ArrayList<>();
+                bound = registered;
+                TransactionSynchronizationManager.bindResource(TRANSACTION_EVENTS, registered);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        submit(registered);
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_EVENTS);
+                    }
+                });
+            }
+            events = bound;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        OutboxEvent event = new OutboxEvent().setEventType(eventType).setPayload(json).setStatus(OUTBOX_PENDING)
+                .setAttempts(0).setNextRunTime(now.plusSeconds(leaseSeconds)).setCreateTime(now).setUpdateTime(now)
+                .setDependsOn(events == null || events.isEmpty() ? null : events.get(events.size() - 1).getId());
+        outboxEventMapper.insert(event);
+        if (events == null) {
+            submit(Collections.singletonList(event));
+            return;
+        }
+        events.add(event);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${outbox.relay-interval-ms:10000}")
+    public void relayPending() {
+        LambdaQueryWrapper<OutboxEvent> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(OutboxEvent::getStatus, OUTBOX_PENDING)
+                .le(OutboxEvent::getNextRunTime, LocalDateTime.now())
+                .orderByAsc(OutboxEvent::getId)
+                .last("limit " + batchSize);
+        for (OutboxEvent event : outboxEventMapper.selectList(wrapper)) {
+            relay(event);
+        }
+    }
+
+    private void submit(List<OutboxEvent> events) {
+        try {
+            outboxExecutor.execute(() -> {
+                for (OutboxEvent event : events) {
+                    if (!relay(event)) {
+                        break;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("发件箱中继繁忙，" + events.size() + "个事件留待定时补发");
+        }
+    }
+
+    /**
+     * 返回事件是否已发送成功，失败或前一个事件尚未成功时返回false，同一事务后续的事件留待定时补发按id顺序处理
+     */
+    private boolean relay(OutboxEvent event) {
+        if (event.getDependsOn() != null) {
+            OutboxEvent previous = outboxEventMapper.selectById(event.getDependsOn());
+            if (previous != null && previous.getStatus() == OUTBOX_PENDING) {
+                return false;
+            }
+            if (previous != null && previous.getStatus() == OUTBOX_ABANDONED) {
+                LambdaUpdateWrapper<OutboxEvent> abandon = new LambdaUpdateWrapper<>();
+                abandon.set(OutboxEvent::getStatus, OUTBOX_ABANDONED)
+                        .set(OutboxEvent::getError, "前一个事件" + previous.getId() + "已放弃")
+                        .set(OutboxEvent::getUpdateTime, LocalDateTime.now())
+                        .eq(OutboxEvent::getId, event.getId())
+                        .eq(OutboxEvent::getStatus, OUTBOX_PENDING);
+                outboxEventMapper.update(null, abandon);
+                log.error("发件箱事件" + event.getId() + "（" + event.getEventType() + "）依赖的事件" + previous.getId() + "已放弃，不再处理");
+                return false;
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LambdaUpdateWrapper<OutboxEvent> claim = new LambdaUpdateWrapper<>();
+        claim.set(OutboxEvent::getAttempts, event.getAttempts() + 1)
+                .set(OutboxEvent::getNextRunTime, now.plusSeconds(leaseSeconds))
+                .set(OutboxEvent::getUpdateTime, now)
+                .eq(OutboxEvent::getId, event.getId())
+                .eq(OutboxEvent::getStatus, OUTBOX_PENDING)
+                .eq(OutboxEvent::getAttempts, event.getAttempts());
+        if (outboxEventMapper.update(null, claim) != 1) {
+            return false;
+        }
+        int attempts = event.getAttempts() + 1;
+        LambdaUpdateWrapper<OutboxEvent> result = new LambdaUpdateWrapper<>();
+        result.eq(OutboxEvent::getId, event.getId()).set(OutboxEvent::getUpdateTime, LocalDateTime.now());
+        boolean sent = false;
+        try {
+            dispatch(event);
+            result.set(OutboxEvent::getStatus, OUTBOX_SENT).set(OutboxEvent::getError, null);
+            sent = true;
+        } catch (Exception e) {
+            String error = String.valueOf(e);
+            result.set(OutboxEvent::getError, error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+            if (attempts >= maxAttempts) {
+                result.set(OutboxEvent::getStatus, OUTBOX_ABANDONED);
+                log.error("发件箱事件" + event.getId() + "（" + event.getEventType() + "）失败" + attempts + "次，不再重试", e);
+            } else {
+                long delay = Math.min(maxBackoffSeconds, backoffSeconds << Math.min(attempts - 1, 20));
+                result.set(OutboxEvent::getNextRunTime, LocalDateTime.now().plusSeconds(delay));
+                log.warn("发件箱事件" + event.getId() + "（" + event.getEventType() + "）第" + attempts + "次失败，" + delay + "秒后重试", e);
+            }
+        }
+        outboxEventMapper.update(null, result);
+        return sent;
+    }
+
+    private void dispatch(OutboxEvent event) throws JsonProcessingException {
+        String payload = event.getPayload();
+        switch (event.getEventType()) {
+            case OUTBOX_PROMOTE_COVER:
+                Map<String, String> cover = objectMapper.readValue(payload, new TypeReference<Map<String, String>>() {
+                });
+                minioService.promoteCover(cover.get(OUTBOX_STAGED_NAME), cover.get(OUTBOX_COVER_NAME));
+                break;
+            case OUTBOX_UPLOAD_NOTICE:
+                client.sendUploadNotice(objectMapper.readValue(payload, UploadVideo.class));
+                break;
+            case OUTBOX_DYNAMIC_NOTICE:
+                client.dynamicNotice(objectMapper.readValue(payload, Dynamic.class));
+                break;
+            case OUTBOX_DB_CHANGE:
+                client.sendDBChangeNotice(objectMapper.readValue(payload, new TypeReference<Map<String, Object>>() {
+                }));
+                break;
+            default:
+                throw new IllegalArgumentException("未知的发件箱事件类型：" + event.getEventType());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ljl.bilibili.video.service.video_production.impl;
+
+import ljl.bilibili.video.pojo.UploadPart;
+import ljl.bilibili.video.service.video_production.UploadSessionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * redis哈希实现，多个视频服务实例共享同一份上传会话
+ * upload:part:{标识符} 存 分片序号-分片名称，upload:attribute:{标识符} 存会话属性，
+ * upload:active 按最后写入时间记录所有会话；会话超过ttl即视为过期，键保留两倍ttl，留给回收任务读取后清理
+ */
+@Service
+@ConditionalOnProperty(name = "upload.session.store", havingValue = "redis")
+public class RedisUploadSessionServiceImpl implements UploadSessionService {
+    /**
+     * HSET与HLEN放在同一个脚本中执行，保证只有一个请求能看到最后一个分片到达；HSET返回0表示分片重传
+     */
+    private static final RedisScript<Long> REGISTER_PART_SCRIPT = new DefaultRedisScript<>(
+            "local added = redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+                    "redis.call('PEXPIRE', KEYS[2], ARGV[3]) " +
+                    "redis.call('ZADD', KEYS[3], ARGV[4], ARGV[5]) " +
+                    "if added == 0 then return -1 end " +
+                    "return redis.call('HLEN', KEYS[1])", Long.class);
+    /**
+     * 会话仍是过期状态时才从upload:active中移除，移除成功的实例负责回收，避免多个实例重复回收或回收刚被续上的会话
+     */
+    private static final RedisScript<Long> CLAIM_EXPIRED_SCRIPT = new DefaultRedisScript<>(
+            "local score = redis.call('ZSCORE', KEYS[1], ARGV[1]) " +
+                    "if score and tonumber(score) <= tonumber(ARGV[2]) then " +
+                    "redis.call('ZREM', KEYS[1], ARGV[1]) return 1 end " +
+                    "return 0", Long.class);
+    @Resource
+    RedisTemplate<String, String> redisTemplate;
+    @Value("${upload.session.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Override
+    public int registerPart(String resumableIdentifier, int chunkNumber, String partName) {
+        Long count = redisTemplate.execute(REGISTER_PART_SCRIPT,
+                Arrays.asList(UPLOAD_PART_KEY + resumableIdentifier, UPLOAD_ATTRIBUTE_KEY + resumableIdentifier, UPLOAD_ACTIVE_KEY),
+                String.valueOf(chunkNumber), partName, String.valueOf(TimeUnit.MINUTES.toMillis(ttlMinutes) * 2),
+                String.valueOf(System.currentTimeMillis()), resumableIdentifier);
+        return count == null ? -1 : count.intValue();
+    }
+
+    @Override
+    public boolean hasPart(String resumableIdentifier, int chunkNumber) {
+        return redisTemplate.opsForHash().hasKey(UPLOAD_PART_KEY + resumableIdentifier, String.valueOf(chunkNumber));
+    }
+
+    @Override
+    public SortedMap<Integer, String> getParts(String resumableIdentifier) {
+        SortedMap<Integer, String> parts = new TreeMap<>();
+        for (Map.Entry<Object, Object> entry : redisTemplate.opsForHash().entries(UPLOAD_PART_KEY + resumableIdentifier).entrySet()) {
+            parts.put(Integer.valueOf((String) entry.getKey()), (String) entry.getValue());
+        }
+        return parts;
+    }
+
+    @Override
+    public String getAttribute(String resumableIdentifier, String key) {
+        return (String) redisTemplate.opsForHash().get(UPLOAD_ATTRIBUTE_KEY + resumableIdentifier, key);
+    }
+
+    @Override
+    public Map<String, String> getAttributes(String resumableIdentifier) {
+        Map<String, String> attributes = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : redisTemplate.opsForHash().entries(UPLOAD_ATTRIBUTE_KEY + resumableIdentifier).entrySet()) {
+            attributes.put((String) entry.getKey(), (String) entry.getValue());
+        }
+        return attributes;
+    }
+
+    @Override
+    public void setAttribute(String resumableIdentifier, String key, String value) {
+        redisTemplate.opsForHash().put(UPLOAD_ATTRIBUTE_KEY + resumableIdentifier, key, value);
+        expire(resumableIdentifier);
+    }
+
+    @Override
+    public boolean setAttributeIfAbsent(String resumableIdentifier, String key, String value) {
+        Boolean success = redisTemplate.opsForHash().putIfAbsent(UPLOAD_ATTRIBUTE_KEY + resumableIdentifier, key, value);
+        expire(resumableIdentifier);
+        return Boolean.TRUE.equals(success);
+    }
+
+    @Override
+    public void remove(String resumableIdentifier) {
+        redisTemplate.delete(Arrays.asList(UPLOAD_PART_KEY + resumableIdentifier, UPLOAD_ATTRIBUTE_KEY + resumableIdentifier));
+        redisTemplate.opsForZSet().remove(UPLOAD_ACTIVE_KEY, resumableIdentifier);
+    }
+
+    @Override
+    public Map<String, UploadPart> pollExpired(int limit) {
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes);
+        Set<String> candidates = redisTemplate.opsForZSet().rangeByScore(UPLOAD_ACTIVE_KEY, 0, deadline, 0, limit);
+        Map<String, UploadPart> expired = new HashMap<>();
+        if (candidates == null) {
+            return expired;
+        }
+        for (String resumableIdentifier : candidates) {
+            Long claimed = redisTemplate.execute(CLAIM_EXPIRED_SCRIPT, Collections.singletonList(UPLOAD_ACTIVE_KEY),
+                    resumableIdentifier, String.valueOf(deadline));
+            if (claimed == null || claimed == 0) {
+                continue;
+            }
+            UploadPart uploadPart = new UploadPart();
+            uploadPart.getPartMap().putAll(getParts(resumableIdentifier));
+            uploadPart.getAttributeMap().putAll(getAttributes(resumableIdentifier));
+            redisTemplate.delete(Arrays.asList(UPLOAD_PART_KEY + resumableIdentifier, UPLOAD_ATTRIBUTE_KEY + resumableIdentifier));
+            expired.put(resumableIdentifier, uploadPart);
+        }
+        return expired;
+    }
+
+    private void expire(String resumableIdentifier) {
+        redisTemplate.expire(UPLOAD_PART_KEY + resumableIdentifier, ttlMinutes * 2, TimeUnit.MINUTES);
+        redisTemplate.expire(UPLOAD_ATTRIBUTE_KEY + resumableIdentifier, ttlMinutes * 2, TimeUnit.MINUTES);
+        redisTemplate.opsForZSet().add(UPLOAD_ACTIVE_KEY, resumableIdentifier, System.currentTimeMillis());
+    }
+}
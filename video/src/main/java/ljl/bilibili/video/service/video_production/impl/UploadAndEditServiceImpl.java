@@ -1,41 +1,45 @@
 package ljl.bilibili.video.service.video_production.impl;
 
-import cn.hutool.core.codec.Base64;
 import cn.hutool.core.io.FileTypeUtil;
 import cn.hutool.core.io.IoUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import io.minio.StatObjectResponse;
 import io.minio.errors.*;
-import ljl.bilibili.client.file.CustomMultipartFile;
 import ljl.bilibili.client.notice.SendNoticeClient;
 import ljl.bilibili.client.pojo.UploadVideo;
-import ljl.bilibili.entity.user_center.user_info.User;
 import ljl.bilibili.entity.video.video_production.upload.Video;
 import ljl.bilibili.entity.video.video_production.upload.VideoData;
-import ljl.bilibili.mapper.user_center.user_info.UserMapper;
 import ljl.bilibili.mapper.video.video_production.upload.VideoDataMapper;
 import ljl.bilibili.mapper.video.video_production.upload.VideoMapper;
 import ljl.bilibili.util.Result;
-import ljl.bilibili.video.pojo.UploadPart;
+import ljl.bilibili.video.pojo.ChunkChecksum;
+import ljl.bilibili.video.service.video_production.CoverService;
+import ljl.bilibili.video.service.video_production.OutboxService;
 import ljl.bilibili.video.service.video_production.UploadAndEditService;
+import ljl.bilibili.video.service.video_production.UploadSessionService;
+import ljl.bilibili.video.service.video_production.VideoFingerprintService;
+import ljl.bilibili.video.util.UploadFileUtil;
+import ljl.bilibili.video.util.VideoTypeUtil;
 import ljl.bilibili.video.vo.request.video_production.DeleteVideoRequest;
 import ljl.bilibili.video.vo.request.video_production.EditVideoRequest;
 import ljl.bilibili.video.vo.request.video_production.UploadPartRequest;
 import ljl.bilibili.video.vo.request.video_production.UploadVideoRequest;
+import ljl.bilibili.video.vo.response.video_production.PresignedUploadResponse;
 import ljl.bilibili.video.vo.response.video_production.UploadProcessorResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.web.multipart.MultipartFile;
 import ws.schild.jave.EncoderException;
-import ws.schild.jave.MultimediaObject;
-import ws.schild.jave.ScreenExtractor;
 
 import javax.annotation.Resource;
 import javax.imageio.ImageIO;
@@ -51,6 +55,8 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static ljl.bilibili.video.constant.Constant.*;
@@ -63,96 +69,100 @@ public class UploadAndEditServiceImpl implements UploadAndEditService {
     @Resource
     VideoMapper videoMapper;
 
-    @Resource
-    UserMapper userMapper;
-
     @Resource
     SendNoticeClient client;
     @Resource
     VideoDataMapper videoDataMapper;
     @Resource
-    RedisTemplate objectRedisTemplate;
+    UploadSessionService uploadSessionService;
+    @Resource
+    OutboxService outboxService;
+    @Resource
+    CoverService coverService;
+    @Resource
+    VideoFingerprintService videoFingerprintService;
+    @Value("${upload.mode:multipart}")
+    String uploadMode;
+    @Value("${upload.presign.expiry-minutes:60}")
+    long presignExpiryMinutes;
+    @Value("${upload.merge-lease-seconds:600}")
+    long mergeLeaseSeconds;
 
     /**
-     * 判断是否恶意文件、上传视频到minio、新增视频与视频数据记录、推送视频动态、发送数据同步消息
+     * 新增视频与视频数据记录，封面转正、发送转码任务、推送视频动态和数据同步消息写入发件箱，事务提交后再执行，事务内不做网络调用
+     * 视频文件只认上传会话中已合并或秒传验证通过的文件，不能绑定别人的文件
      */
     @Override
     @Transactional
     public Result<Boolean> uploadTotal(UploadVideoRequest uploadVideoRequest) {
+        String resumableIdentifier = uploadVideoRequest.getResumableIdentifier();
+        String objectName = resumableIdentifier == null ? null : uploadSessionService.getAttribute(sessionId(resumableIdentifier), UPLOAD_MERGED);
+        if (objectName == null) {
+            return Result.error("上传会话不存在或已过期");
+        }
+        uploadVideoRequest.setUrl(objectName);
         try {
             Video video = uploadVideoRequest.toEntity();
-            LambdaQueryWrapper<Video> queryWrapper = new LambdaQueryWrapper<>();
             String coverFile = uploadVideoRequest.getVideoCover();
             String url = "http://localhost:9000/video/" + uploadVideoRequest.getUrl();
             video.setUrl(url);
-            // 如果视频有封面
-            if (coverFile != null && coverFile != "") {
-//                hasCover=true;
+            // 秒传复用的视频文件已经或正在处理（转码、时长），不再发送转码消息，否则两个任务会同时覆盖同一个文件；
+            // 已处理完的沿用已有记录的结果，还在转码的由转码服务完成后补上
+            Video sameVideo = videoMapper.selectOne(new LambdaQueryWrapper<Video>().eq(Video::getUrl, url).orderByAsc(Video::getId).last("limit 1"));
+            if (sameVideo != null) {
+                video.setLength(sameVideo.getLength()).setManifestUrl(sameVideo.getManifestUrl())
+                        .setPreviewUrl(sameVideo.getPreviewUrl()).setCoverCandidates(sameVideo.getCoverCandidates());
+            }
+            // 如果视频有封面（封面是截取封面时写入video-cover桶的暂存对象名）
+            boolean hasCover = coverFile != null && coverFile.startsWith(COVER_STAGING_PREFIX);
+            String coverFileName = null;
+            if (hasCover) {
                 String prefixPath = "http://localhost:9000/video-cover/";
-                byte[] decodedBytes = java.util.Base64.getDecoder().decode(coverFile);
-//                ByteArrayInputStream bis = new ByteArrayInputStream(decodedBytes);
-                // 创建ImageInputStream
-//                ImageInputStream iis = ImageIO.createImageInputStream(bis);
-                // 读取图片文件格式
-//                String imgContentType = getImageFormat(iis);
-//                log.info(imgContentType);
-                String imgContentType = "image/jpeg";
-                String coverFileName = video.getName() + UUID.randomUUID().toString().substring(0, 8) + ".jpg";
+                coverFileName = video.getName() + UUID.randomUUID().toString().substring(0, 8) + ".jpg";
                 video.setCover(prefixPath + coverFileName);
-                // 1.视频记录信息插入到video表中
-                videoMapper.insert(video);
-                // 2.视频数据记录插入到video_data表中
-                videoDataMapper.insert(new VideoData().setVideoId(video.getId()));
-                // 3.上传封面到Minio
-                CustomMultipartFile coverMultipartFile = new CustomMultipartFile(decodedBytes, coverFileName, imgContentType);
-                queryWrapper.eq(Video::getCover, UUID.randomUUID().toString().substring(0, 8) + coverFileName);
-                minioService.uploadImgFile(coverFileName, coverMultipartFile.getInputStream(), imgContentType);
-                // 4.视频上传消息发送到消息队列
-                client.sendUploadNotice(new UploadVideo().setVideoId(video.getId()).setVideoName(video.getName()).setUrl(url).setHasCover(true));
-                User user = userMapper.selectById(uploadVideoRequest.getUserId());
-                // 5.视频动态推送到消息队列
-                client.dynamicNotice(uploadVideoRequest.toCoverDynamic(user, video));
-                // 视频无封面
-            } else {
-                // 1.视频记录信息插入到video表中
-                videoMapper.insert(video);
-                // 2.视频数据记录插入到video_data表中
-                videoDataMapper.insert(new VideoData().setVideoId(video.getId()));
-                // 3.视频上传消息发送至消息队列
-                client.sendUploadNotice(new UploadVideo().setVideoId(video.getId()).setVideoName(video.getName()).setUrl(url).setHasCover(false));
-                User user = userMapper.selectById(uploadVideoRequest.getUserId());
-                // 4.视频动态推送到消息队列（推送动态给粉丝）
-                client.dynamicNotice(uploadVideoRequest.toNoCoverDynamic(user, video));
+            } else if (sameVideo != null) {
+                // 秒传复用时沿用已有视频截取的封面
+                video.setCover(sameVideo.getCover());
             }
+            // 1.视频记录信息插入到video表中
+            videoMapper.insert(video);
+            // 2.视频数据记录插入到video_data表中
+            videoDataMapper.insert(new VideoData().setVideoId(video.getId()));
+            // 3.提交后在Minio服务端把暂存封面复制为正式封面，不再重新传输图片
+            if (hasCover) {
+                Map<String, String> cover = new HashMap<>();
+                cover.put(OUTBOX_STAGED_NAME, coverFile);
+                cover.put(OUTBOX_COVER_NAME, coverFileName);
+                outboxService.add(OUTBOX_PROMOTE_COVER, cover);
+            }
+            // 4.提交后发送转码任务
+            if (sameVideo == null) {
+                outboxService.add(OUTBOX_UPLOAD_NOTICE, new UploadVideo().setVideoId(video.getId()).setVideoName(video.getName()).setUrl(url).setHasCover(hasCover));
+            }
+            // 5.提交后推送视频动态给粉丝
+            outboxService.add(OUTBOX_DYNAMIC_NOTICE, hasCover ? uploadVideoRequest.toCoverDynamic(uploadVideoRequest.getUserId(), video)
+                    : uploadVideoRequest.toNoCoverDynamic(uploadVideoRequest.getUserId(), video));
             /**
              * 下面是发送数据同步消息，视频或用户变更---> 同步es
              */
-            CompletableFuture<Void> sendDBChangeNotice = CompletableFuture.runAsync(() -> {
-                ObjectMapper objectMapper = new ObjectMapper();
-                JavaTimeModule module = new JavaTimeModule();
-                // 设置LocalDateTime的序列化方式
-                LocalDateTimeSerializer localDateTimeSerializer = new LocalDateTimeSerializer(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-                module.addSerializer(LocalDateTime.class, localDateTimeSerializer);
-                objectMapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
-                objectMapper.registerModule(module);
-                Map<String, Object> map = objectMapper.convertValue(video, Map.class);
-                map.put(TABLE_NAME, VIDEO_TABLE_NAME);
-                map.put(OPERATION_TYPE, OPERATION_TYPE_ADD);
-                map.put(VIDEO_ID, map.get(TABLE_ID));
-                map.remove(TABLE_ID);
-                client.sendDBChangeNotice(map);
-            });
-
-//            CompletableFuture.allOf(uploadVideoFuture, sendNoticeFuture).join();
-//            if (!uploadVideoSuccess.get()) {
-//                log.error("lose");
-//            } else {
-//                // 所有任务成功
-//                log.info("ok");
-//            }
+            ObjectMapper objectMapper = new ObjectMapper();
+            JavaTimeModule module = new JavaTimeModule();
+            // 设置LocalDateTime的序列化方式
+            LocalDateTimeSerializer localDateTimeSerializer = new LocalDateTimeSerializer(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            module.addSerializer(LocalDateTime.class, localDateTimeSerializer);
+            objectMapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
+            objectMapper.registerModule(module);
+            Map<String, Object> map = objectMapper.convertValue(video, Map.class);
+            map.put(TABLE_NAME, VIDEO_TABLE_NAME);
+            map.put(OPERATION_TYPE, OPERATION_TYPE_ADD);
+            map.put(VIDEO_ID, map.get(TABLE_ID));
+            map.remove(TABLE_ID);
+            outboxService.add(OUTBOX_DB_CHANGE, map);
             return Result.success(true);
         } catch (Exception e) {
             e.printStackTrace();
+            // 异常被吞掉时也要回滚，避免只写入了一部分记录和事件
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return Result.error("寄");
         }
     }
@@ -178,43 +188,29 @@ public class UploadAndEditServiceImpl implements UploadAndEditService {
                 String videoUrl = UUID.randomUUID().toString().substring(0, 10) + editVideoRequest.getName();
                 video.setUrl(videoUrl);
                 map.put(VIDEO_URL, videoUrl);
+                // 请求结束后servlet会删除临时文件，先同步转存到本地再异步上传
+                File stagedVideo = UploadFileUtil.stage(videoFile);
                 CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
                     try {
-                        minioService.uploadVideoFile(videoUrl, videoFile.getInputStream(), videoFile.getContentType());
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                        minioService.uploadVideoFile(videoUrl, stagedVideo, videoFile.getContentType());
+                    } finally {
+                        stagedVideo.delete();
                     }
 
                 });
-                CompletableFuture<Void> future1 = CompletableFuture.runAsync(() -> {
-                    while (true) {
-                        String key = "encode-count";
-                        Integer count = (Integer) objectRedisTemplate.opsForValue().get(key);
-                        if (count < 3) {
-                            client.sendUploadNotice(new UploadVideo().setVideoId(video.getId()).setUrl(videoUrl).setVideoName(video.getName()));
-                            count++;
-                            objectRedisTemplate.opsForValue().set(key, count);
-                            break;
-                        } else {
-                            try {
-                                Thread.sleep(5000);
-                            } catch (InterruptedException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-
-                    }
-                });
+                // 新视频上传完成后再入转码队列，并发由转码任务队列控制，这里不再轮询等待
+                future.thenRun(() -> client.sendUploadNotice(new UploadVideo().setVideoId(video.getId()).setUrl(videoUrl).setVideoName(video.getName())));
             }
             MultipartFile coverFile = editVideoRequest.getCover();
             if (coverFile != null) {
+                File stagedCover = UploadFileUtil.stage(coverFile);
                 CompletableFuture<Void> completableFuture = CompletableFuture.runAsync(() -> {
                     String coverUrl = UUID.randomUUID().toString().substring(0, 10) + coverFile.getOriginalFilename();
                     map.put(VIDEO_COVER, coverUrl);
                     try {
-                        minioService.uploadImgFile(coverUrl, coverFile.getInputStream(), coverFile.getContentType());
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                        minioService.uploadImgFile(coverUrl, stagedCover, coverFile.getContentType());
+                    } finally {
+                        stagedCover.delete();
                     }
                     video.setCover(coverUrl);
                 });
@@ -261,111 +257,149 @@ public class UploadAndEditServiceImpl implements UploadAndEditService {
      * 上传视频时获取视频封面
      */
     /**
-     * 处理视频分片上传并生成封面
-     * 功能：接收视频分片，验证标识符，在首次处理时生成视频封面，上传分片到存储，并在所有分片上传完成后合并文件
+     * 处理视频分片上传
+     * 功能：接收视频分片，验证标识符，上传分片到存储，第一个分片提交异步截取封面任务，并在所有分片上传完成后合并文件
      * @param uploadPartRequest 分片上传请求对象，包含分片信息、文件流等
-     * @return 包含最终视频名称和封面Base64编码的结果列表
+     * 第一个分片带有已存在文件的指纹时不写入任何存储，第三个元素返回秒传校验范围，客户端校验通过后直接调用uploadTotal
+     * @return 包含最终视频名称和封面暂存对象名（尚未生成时为空）的结果列表
      * @throws（IO/编码/存储服务等相关），具体参见方法声明
      */
     @Override
     public Result<List<String>> uploadPart(UploadPartRequest uploadPartRequest) throws IOException, EncoderException, ServerException, InsufficientDataException, ErrorResponseException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
+        Integer totalChunks = uploadPartRequest.getResumableTotalChunks();
+        Integer chunkNumberParam = uploadPartRequest.getResumableChunkNumber();
+        if (uploadPartRequest.getResumableIdentifier() == null || totalChunks == null || chunkNumberParam == null
+                || totalChunks < 1 || totalChunks > MAX_CHUNKS || chunkNumberParam < 1 || chunkNumberParam > totalChunks) {
+            return Result.error("分片序号需在1到分片总数之间，分片总数需在1到" + MAX_CHUNKS + "之间");
+        }
         // 处理resumableIdentifier，截取逗号前的有效标识符部分
-        int commaIndex = uploadPartRequest.getResumableIdentifier().indexOf(',');
-        uploadPartRequest.setResumableIdentifier(uploadPartRequest.getResumableIdentifier().substring(0, commaIndex));
+        uploadPartRequest.setResumableIdentifier(sessionId(uploadPartRequest.getResumableIdentifier()));
         String resumableIdentifier = uploadPartRequest.getResumableIdentifier();
 
-        // 最终视频名称和封面Base64编码（用于返回结果）
+        // 最终视频名称和封面暂存对象名（用于返回结果）
         String videoName = "";
         String videoCover = "";
 
-        // 【已注释】原意图：校验第一个分片是否为MP4文件，防止恶意文件上传
-//        if(uploadPartRequest.getResumableChunkNumber()==1){
-//            String path = Files.createTempDirectory(".tmp").toString();
-//            File file = new File(path, "test");
-//            InputStream videoFileInputStream = uploadPartRequest.getFile().getInputStream();
-//            byte[] bytes=IoUtil.readBytes(videoFileInputStream);
-//            ByteArrayInputStream byteArrayInputStream=new ByteArrayInputStream(bytes);
-//            Files.copy(byteArrayInputStream, Paths.get(file.getAbsolutePath()), StandardCopyOption.REPLACE_EXISTING);
-//            if (!FileTypeUtil.getType(file).equals("mp4")) {
-//                file.delete();
-//                return Result.error("上传恶意文件");
-//            } else {
-//                file.delete();
-//                log.info("文件无问题");
-//            }
-//        }
-
-        // 如果当前上传记录不存在，或尚未生成封面，则执行封面生成逻辑
-        if (uploadPartMap.get(resumableIdentifier) == null || uploadPartMap.get(resumableIdentifier).getHasCutImg() == false) {
-            // 读取当前分片的文件流
-            InputStream videoFileInputStream = uploadPartRequest.getFile().getInputStream();
-            byte[] bytes = IoUtil.readBytes(videoFileInputStream);
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-
-            // 创建临时目录和文件（用于提取封面）
-            String filePath = Files.createTempDirectory(".tmp").toString();
-            String coverFileName = UUID.randomUUID().toString().substring(0, 10) + ".jpg"; // 封面文件名（带随机前缀）
-            String videoFileName = "video"; // 临时视频文件名
-            File directory = new File(filePath);
-            File videoFile = new File(filePath, videoFileName); // 临时视频文件
-            File coverFile = new File(directory, coverFileName); // 临时封面文件
-
-            // 将分片文件流写入临时视频文件
-            Files.copy(byteArrayInputStream, Paths.get(videoFile.getAbsolutePath()), StandardCopyOption.REPLACE_EXISTING);
-
-            // 使用JAVE库提取视频第一帧作为封面
-            ScreenExtractor screenExtractor = new ScreenExtractor();
-            MultimediaObject multimediaObject = new MultimediaObject(videoFile);
-            screenExtractor.renderOneImage(multimediaObject, -1, -1, 1000, coverFile, 1); // 参数：视频对象、宽(-1保持原宽)、高(-1保持原高)、提取时间(ms)、输出文件、质量
-
-            // 若封面文件生成成功，编码为Base64并更新上传状态
-            if (coverFile.exists()) {
-                log.info("封面文件生成成功");
-                InputStream inputStream = new FileInputStream(coverFile);
-                String cover = Base64.encode(IoUtil.readBytes(inputStream)); // 封面图片Base64编码
-                log.info("封面Base64编码前20位：" + cover.substring(0, 20));
-
-                // 清理临时文件
-                videoFile.delete();
-                coverFile.delete();
-
-                // 更新上传状态：标记已生成封面，并存储封面编码
-                UploadPart uploadPart = uploadPartMap.getOrDefault(resumableIdentifier, new UploadPart());
-                uploadPart.setHasCutImg(true);
-                uploadPart.setCover(cover);
-                uploadPartMap.put(resumableIdentifier, uploadPart);
+        // 会话已合并或秒传已验证通过，后续分片不再写入存储
+        String merged = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGED);
+        if (merged != null) {
+            return Result.data(Arrays.asList(merged, ""));
+        }
+        if (uploadPartRequest.getResumableChunkNumber() == 1) {
+            String challenge = issueInstantChallenge(resumableIdentifier, uploadPartRequest.getFingerprint());
+            if (challenge != null) {
+                log.info("秒传命中，等待校验：" + resumableIdentifier);
+                return Result.data(Arrays.asList(videoName, videoCover, challenge));
             }
         }
+
         /**
-         * uploadPartMap---> UploadPart---> partMap
-         *  1. uploadPartMap---> UploadPart
-         *  文件名/标识符----> 分片集合（已上传分片数、是否截取封面、封面的base64图像编码、partMap）
-         *  2. UploadPart---> partMap
-         *  partMap: 分片序号---> 分片文件名
+         * 上传会话：文件标识符---> 分片序号-分片文件名（multipart模式下为分片ETag） + 会话属性（封面暂存对象名、分片摘要等）
+         * 会话存储在本机内存或redis中，由upload.session.store决定
          */
-        // 生成当前分片的唯一名称并上传到MinIO
-        String name = resumableIdentifier + UUID.randomUUID().toString().substring(0, 10); // 分片名称（标识符+随机串）
-        // 上传分片文件到minio （分片文件名、分片文件流、文件类型）
-        minioService.uploadVideoFile(name, uploadPartRequest.getFile().getInputStream(), VIDEO_TYPE);
-
-        // 更新分片上传状态：记录当前分片编号与分片名称的映射关系
-        Map<Integer, String> newUploadPartMap = uploadPartMap.getOrDefault(resumableIdentifier, new UploadPart()).getPartMap();
-        // 存入分片序号--分片文件名
-        newUploadPartMap.put(uploadPartRequest.getResumableChunkNumber(), name);
-        UploadPart uploadPart = uploadPartMap.getOrDefault(resumableIdentifier, new UploadPart());
-        // 更新各个分片的状态
-        uploadPart.setPartMap(newUploadPartMap);
-        uploadPartMap.put(resumableIdentifier, uploadPart);
+        int chunkNumber = uploadPartRequest.getResumableChunkNumber();
+        // 分片先转存为本地文件（servlet临时文件直接改名），摘要和上传都从磁盘读取，堆内只占用固定大小的缓冲区；
+        // 第一个分片在转存的同一个流上先预读文件头，按容器魔数拒绝非视频文件，不落盘也不写入存储
+        File chunkFile;
+        if (chunkNumber == 1) {
+            chunkFile = UploadFileUtil.stageVideo(uploadPartRequest.getFile());
+            if (chunkFile == null) {
+                log.warn("上传恶意文件：" + resumableIdentifier);
+                return Result.error("上传恶意文件");
+            }
+        } else {
+            chunkFile = UploadFileUtil.stage(uploadPartRequest.getFile());
+        }
+        String partName;
+        try {
+            // 一次读取同时算出秒传指纹用的SHA-256和校验用的MD5、CRC32C，校验不通过的分片不写入存储
+            ChunkChecksum checksum = UploadFileUtil.checksum(chunkFile);
+            if (!matches(uploadPartRequest.getResumableChunkMd5(), checksum.getMd5())
+                    || !matches(uploadPartRequest.getResumableChunkCrc32c(), checksum.getCrc32c())) {
+                log.warn("分片校验失败：" + resumableIdentifier + " 第" + chunkNumber + "片");
+                return Result.error("分片校验失败");
+            }
+            if (UPLOAD_MODE_MULTIPART.equals(uploadMode)) {
+                // S3原生分片上传：分片直接作为最终对象的一个part上传，不再产生单独的分片对象
+                String uploadId = getOrCreateMultipartUpload(resumableIdentifier);
+                partName = minioService.uploadPart(uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME), uploadId, chunkNumber, chunkFile);
+            } else {
+                // 生成当前分片的唯一名称并上传到MinIO
+                partName = resumableIdentifier + UUID.randomUUID().toString().substring(0, 10); // 分片名称（标识符+随机串）
+                // 上传分片文件到minio （分片文件名、分片文件、文件类型）
+                minioService.uploadVideoFile(partName, chunkFile, VIDEO_TYPE);
+            }
+            // 摘要要在登记分片之前写入会话，保证补齐最后一个分片的请求能拿到所有分片的摘要
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_DIGEST_PREFIX + chunkNumber, checksum.getSha256());
+            // 第一个分片写入存储后把本地文件交给线程池异步截取封面，请求直接返回，前端通过getCover轮询封面
+            if (chunkNumber == 1) {
+                coverService.submit(resumableIdentifier, chunkFile);
+                chunkFile = null;
+            }
+        } finally {
+            if (chunkFile != null) {
+                chunkFile.delete();
+            }
+        }
 
-        // 累加已上传分片数量，判断是否所有分片均已上传完成
-        uploadPartMap.get(resumableIdentifier).setTotalCount(uploadPartMap.get(resumableIdentifier).getTotalCount() + 1);
-        if (uploadPartMap.get(resumableIdentifier).getTotalCount().equals(uploadPartRequest.getResumableTotalChunks())) {
+        // 原子登记分片，返回登记后的已上传分片数；只有补齐最后一个分片的请求会等于分片总数。
+        // 合并失败或合并请求中途宕机后，重传的分片登记返回-1，此时所有分片都已登记而会话尚未合并，也要重新合并
+        int uploadedCount = uploadSessionService.registerPart(resumableIdentifier, chunkNumber, partName);
+        boolean allUploaded = uploadedCount == totalChunks
+                || uploadedCount < 0 && uploadSessionService.getParts(resumableIdentifier).size() == totalChunks;
+        if (allUploaded && acquireMergeLease(resumableIdentifier)) {
+            merged = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGED);
+            if (merged != null) {
+                return Result.data(Arrays.asList(merged, ""));
+            }
             log.info("所有分片上传完成，开始合并文件");
-            // 生成最终视频名称，获取封面编码
-            videoName = resumableIdentifier + UUID.randomUUID().toString().substring(0, 10);
-            videoCover = uploadPartMap.get(resumableIdentifier).getCover();
-            // 调用MinIO服务合并分片文件
-            minioService.composePart(resumableIdentifier, videoName);
+            // 封面此时可能还没生成完，为空时前端继续轮询getCover
+            String cover = coverService.getCover(resumableIdentifier);
+            videoCover = cover == null ? "" : cover;
+            String fingerprint = videoFingerprintService.fingerprint(uploadSessionService.getAttributes(resumableIdentifier), uploadPartRequest.getResumableTotalChunks());
+            String sameFileName = fingerprint == null ? null : videoFingerprintService.find(fingerprint);
+            if (sameFileName != null) {
+                // 秒传：已有内容相同的视频文件，丢弃本次上传的分片，直接复用已有文件
+                log.info("秒传命中，复用视频文件：" + sameFileName);
+                discardParts(resumableIdentifier);
+                videoName = sameFileName;
+            } else if (UPLOAD_MODE_MULTIPART.equals(uploadMode)) {
+                videoName = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME);
+                String uploadId = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_ID);
+                try {
+                    minioService.completeMultipartUpload(videoName, uploadId, uploadSessionService.getParts(resumableIdentifier));
+                } catch (RuntimeException e) {
+                    log.error("合并分片失败：" + e.getMessage());
+                    minioService.abortMultipartUpload(videoName, uploadId);
+                    uploadSessionService.remove(resumableIdentifier);
+                    return Result.error("合并分片失败");
+                }
+            } else {
+                // 生成最终视频名称，调用MinIO服务按分片序号合并分片文件
+                videoName = resumableIdentifier + UUID.randomUUID().toString().substring(0, 10);
+                List<String> partNames = new ArrayList<>(uploadSessionService.getParts(resumableIdentifier).values());
+                try {
+                    minioService.composePart(partNames, videoName);
+                } catch (Exception e) {
+                    // 与multipart模式一致：删除分片和可能已生成的合并对象，重置会话，客户端重新上传
+                    log.error("合并分片失败：" + e.getMessage());
+                    partNames.add(videoName);
+                    minioService.removeVideoObjects(partNames);
+                    uploadSessionService.remove(resumableIdentifier);
+                    return Result.error("合并分片失败");
+                }
+                // 合并后分片对象已无用，立即删除；删除失败不影响已合并的文件
+                try {
+                    minioService.removeVideoObjects(partNames);
+                } catch (RuntimeException e) {
+                    log.warn("删除已合并的分片失败：" + e.getMessage());
+                }
+            }
+            if (sameFileName == null && fingerprint != null) {
+                videoFingerprintService.record(fingerprint, videoName);
+            }
+            // 标记分片已处理，回收过期会话时只清理暂存封面
+            uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_MERGED, videoName);
         }
 
         // 封装结果：视频名称和封面编码
@@ -376,21 +410,241 @@ public class UploadAndEditServiceImpl implements UploadAndEditService {
         return Result.data(list);
     }
 
+    /**
+     * 取得合并租约，同一会话同时只有一个请求合并；持有租约的请求宕机后租约过期，重传最后一个分片的请求可以接管
+     */
+    private boolean acquireMergeLease(String resumableIdentifier) {
+        long now = System.currentTimeMillis();
+        String lease = (now + TimeUnit.SECONDS.toMillis(mergeLeaseSeconds)) + ":" + UUID.randomUUID().toString().substring(0, 8);
+        if (uploadSessionService.setAttributeIfAbsent(resumableIdentifier, UPLOAD_MERGING, lease)) {
+            return true;
+        }
+        String current = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGING);
+        if (current != null && Long.parseLong(current.substring(0, current.indexOf(':'))) > now) {
+            return false;
+        }
+        // 租约已过期，写入后再读一次，同时接管时只有最后写入的请求合并
+        uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_MERGING, lease);
+        return lease.equals(uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGING));
+    }
+
+    /**
+     * 客户端没有传校验值时不校验
+     */
+    private boolean matches(String expected, String actual) {
+        return expected == null || expected.isEmpty() || expected.equalsIgnoreCase(actual);
+    }
+
+    /**
+     * 秒传命中时丢弃本次已上传的分片：multipart模式取消分片上传，compose模式删除分片对象
+     */
+    private void discardParts(String resumableIdentifier) {
+        if (UPLOAD_MODE_MULTIPART.equals(uploadMode)) {
+            minioService.abortMultipartUpload(uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME), uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_ID));
+        } else {
+            minioService.removeVideoObjects(new ArrayList<>(uploadSessionService.getParts(resumableIdentifier).values()));
+        }
+    }
+
+    /**
+     * 获取该上传会话的S3分片上传uploadId，不存在则初始化；并发初始化时只保留先写入会话的那个，其余取消
+     */
+    private String getOrCreateMultipartUpload(String resumableIdentifier) {
+        uploadSessionService.setAttributeIfAbsent(resumableIdentifier, UPLOAD_OBJECT_NAME, resumableIdentifier + UUID.randomUUID().toString().substring(0, 10));
+        String uploadId = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_ID);
+        if (uploadId != null) {
+            return uploadId;
+        }
+        String objectName = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME);
+        String newUploadId = minioService.createMultipartUpload(objectName, VIDEO_TYPE);
+        if (!uploadSessionService.setAttributeIfAbsent(resumableIdentifier, UPLOAD_ID, newUploadId)) {
+            minioService.abortMultipartUpload(objectName, newUploadId);
+        }
+        return uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_ID);
+    }
+
+    /**
+     * 预签名直传：创建（或续用）S3分片上传，返回每个分片的预签名PUT地址；重复调用可在地址过期前续期，同时续上会话
+     */
+    @Override
+    public Result<PresignedUploadResponse> createPresignedUpload(String resumableIdentifier, Integer resumableTotalChunks) {
+        if (resumableTotalChunks == null || resumableTotalChunks < 1 || resumableTotalChunks > MAX_CHUNKS) {
+            return Result.error("分片数需在1到" + MAX_CHUNKS + "之间");
+        }
+        if (uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGED) != null) {
+            return Result.error("文件已上传完成");
+        }
+        uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_PRESIGNED_TOTAL, String.valueOf(resumableTotalChunks));
+        String uploadId = getOrCreateMultipartUpload(resumableIdentifier);
+        String objectName = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME);
+        int expirySeconds = (int) TimeUnit.MINUTES.toSeconds(presignExpiryMinutes);
+        List<String> partUrls = new ArrayList<>(resumableTotalChunks);
+        for (int partNumber = 1; partNumber <= resumableTotalChunks; partNumber++) {
+            partUrls.add(minioService.presignUploadPart(objectName, uploadId, partNumber, expirySeconds));
+        }
+        return Result.data(new PresignedUploadResponse().setObjectName(objectName).setUploadId(uploadId)
+                .setPartUrls(partUrls).setExpirySeconds(expirySeconds));
+    }
+
+    /**
+     * 预签名直传：以MinIO中实际已上传的分片为准合并，返回值与uploadPart合并后相同（视频名称、封面），
+     * 本服务没有经手分片，封面留空由转码服务截取
+     */
+    @Override
+    public Result<List<String>> completePresignedUpload(String resumableIdentifier) {
+        String mergedName = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGED);
+        if (mergedName != null) {
+            return Result.data(Arrays.asList(mergedName, ""));
+        }
+        String total = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_PRESIGNED_TOTAL);
+        String uploadId = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_ID);
+        if (total == null || uploadId == null) {
+            return Result.error("上传会话不存在或已过期");
+        }
+        String videoName = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME);
+        SortedMap<Integer, String> parts = minioService.listUploadedParts(videoName, uploadId);
+        int totalChunks = Integer.parseInt(total);
+        if (parts.size() != totalChunks || parts.firstKey() != 1 || parts.lastKey() != totalChunks) {
+            return Result.error("还有分片未上传");
+        }
+        try {
+            minioService.completeMultipartUpload(videoName, uploadId, parts);
+        } catch (RuntimeException e) {
+            log.error("合并分片失败：" + e.getMessage());
+            minioService.abortMultipartUpload(videoName, uploadId);
+            uploadSessionService.remove(resumableIdentifier);
+            return Result.error("合并分片失败");
+        }
+        // 分片没有经过本服务，合并后只读取文件头校验容器格式，不是视频就删除
+        String type;
+        try (PushbackInputStream header = new PushbackInputStream(minioService.getObject(videoName, 0, VideoTypeUtil.HEADER_SIZE), VideoTypeUtil.HEADER_SIZE)) {
+            type = VideoTypeUtil.detect(header);
+        } catch (IOException e) {
+            throw new RuntimeException("读取文件头失败", e);
+        }
+        if (type == null) {
+            log.warn("上传恶意文件：" + resumableIdentifier);
+            minioService.removeVideoObjects(Collections.singletonList(videoName));
+            uploadSessionService.remove(resumableIdentifier);
+            return Result.error("上传恶意文件");
+        }
+        uploadSessionService.setAttribute(resumableIdentifier, UPLOAD_MERGED, videoName);
+        return Result.data(Arrays.asList(videoName, ""));
+    }
+
     @Override
     public ResponseEntity<Result<Boolean>> getProcessor(String resumableIdentifier, Integer resumableChunkNumber) {
-        log.info("id" + resumableChunkNumber.toString());
-        log.info("uploadMap" + uploadPartMap.toString());
-        log.info(resumableIdentifier);
-        log.info(uploadPartMap.getOrDefault(resumableIdentifier, new UploadPart()).toString());
-        for (Map.Entry<Integer, String> entry : uploadPartMap.getOrDefault(resumableIdentifier, new UploadPart()).getPartMap().entrySet()) {
-            log.info("键值对" + entry.toString());
-            log.info(entry.getKey().intValue() + "和" + resumableChunkNumber.intValue());
-            if (entry.getKey().intValue() == (resumableChunkNumber.intValue())) {
-                log.info("200");
-                return ResponseEntity.ok(Result.data(true));
+        if (uploadSessionService.hasPart(resumableIdentifier, resumableChunkNumber)) {
+            return ResponseEntity.ok(Result.data(true));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @Override
+    public ResponseEntity<Result<UploadProcessorResponse>> getResumeMap(String resumableIdentifier, Integer resumableTotalChunks) {
+        if (resumableIdentifier == null || resumableTotalChunks == null || resumableTotalChunks < 1 || resumableTotalChunks > MAX_CHUNKS) {
+            return ResponseEntity.badRequest().body(Result.error("分片数需在1到" + MAX_CHUNKS + "之间"));
+        }
+        BitSet uploaded = new BitSet(resumableTotalChunks);
+        if (uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_MERGED) != null) {
+            // 已合并的分片上传不能再列分片，所有分片都算已上传
+            uploaded.set(0, resumableTotalChunks);
+        } else {
+            SortedMap<Integer, String> parts = uploadSessionService.getParts(resumableIdentifier);
+            // 预签名直传的分片不经过本服务，到MinIO查询
+            String uploadId = uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_ID);
+            if (uploadId != null && uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_PRESIGNED_TOTAL) != null) {
+                parts = minioService.listUploadedParts(uploadSessionService.getAttribute(resumableIdentifier, UPLOAD_OBJECT_NAME), uploadId);
+            }
+            for (Integer chunkNumber : parts.keySet()) {
+                if (chunkNumber >= 1 && chunkNumber <= resumableTotalChunks) {
+                    uploaded.set(chunkNumber - 1);
+                }
             }
         }
+        double percent = uploaded.cardinality() * 100.0 / resumableTotalChunks;
+        return ResponseEntity.ok(Result.data(new UploadProcessorResponse()
+                .setPercent(percent)
+                .setBitmap(Base64.getEncoder().encodeToString(uploaded.toByteArray()))));
+    }
+
+    /**
+     * 秒传第一步：指纹命中时不返回文件名，只在会话中记下候选文件并随机选一段让客户端证明持有该文件
+     */
+    @Override
+    public ResponseEntity<Result<String>> instantUpload(String resumableIdentifier, String fingerprint) {
+        String challenge = issueInstantChallenge(sessionId(resumableIdentifier), fingerprint);
+        if (challenge == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(Result.data(challenge));
+    }
+
+    /**
+     * 秒传第二步：比对客户端提交的摘要，校验范围只能用一次，通过后把候选文件记为会话已合并的文件
+     */
+    @Override
+    public Result<Boolean> verifyInstantUpload(String resumableIdentifier, String proof) {
+        String sessionId = sessionId(resumableIdentifier);
+        String challenge = uploadSessionService.getAttribute(sessionId, UPLOAD_INSTANT_CHALLENGE);
+        String objectName = uploadSessionService.getAttribute(sessionId, UPLOAD_INSTANT_OBJECT);
+        String fingerprint = uploadSessionService.getAttribute(sessionId, UPLOAD_INSTANT_FINGERPRINT);
+        if (challenge == null || challenge.isEmpty() || objectName == null || fingerprint == null) {
+            return Result.error("没有待校验的秒传请求");
+        }
+        uploadSessionService.setAttribute(sessionId, UPLOAD_INSTANT_CHALLENGE, "");
+        String[] range = challenge.split(",");
+        String expected;
+        // 发出校验范围后文件可能已被转码覆盖，此时读取覆盖前保留的原始副本
+        try (InputStream in = minioService.getObject(videoFingerprintService.proofObject(fingerprint, objectName), Long.parseLong(range[0]), Long.parseLong(range[1]))) {
+            expected = DigestUtil.sha256Hex(in);
+        } catch (IOException e) {
+            throw new RuntimeException("读取文件失败", e);
+        }
+        if (!expected.equalsIgnoreCase(proof)) {
+            log.warn("秒传校验失败：" + sessionId);
+            return Result.error("秒传校验失败");
+        }
+        uploadSessionService.setAttribute(sessionId, UPLOAD_MERGED, objectName);
+        return Result.success(true);
+    }
+
+    /**
+     * 指纹命中时在会话中记下候选文件和随机校验范围，返回“偏移,长度”；未命中返回null。
+     * 候选文件被转码或重新封装过时内容已与客户端的文件不同，校验范围按保留的原始副本计算
+     */
+    private String issueInstantChallenge(String sessionId, String fingerprint) {
+        String objectName = fingerprint == null || fingerprint.isEmpty() ? null : videoFingerprintService.find(fingerprint);
+        StatObjectResponse stat = objectName == null ? null : minioService.statVideo(videoFingerprintService.proofObject(fingerprint, objectName));
+        if (stat == null || stat.size() == 0) {
+            return null;
+        }
+        long length = Math.min(stat.size(), INSTANT_PROOF_LENGTH);
+        long offset = ThreadLocalRandom.current().nextLong(stat.size() - length + 1);
+        String challenge = offset + "," + length;
+        uploadSessionService.setAttribute(sessionId, UPLOAD_INSTANT_OBJECT, objectName);
+        uploadSessionService.setAttribute(sessionId, UPLOAD_INSTANT_FINGERPRINT, fingerprint);
+        uploadSessionService.setAttribute(sessionId, UPLOAD_INSTANT_CHALLENGE, challenge);
+        return challenge;
+    }
 
+    /**
+     * 与uploadPart一致，文件标识符只取逗号前的部分
+     */
+    private static String sessionId(String resumableIdentifier) {
+        int commaIndex = resumableIdentifier.indexOf(',');
+        return commaIndex < 0 ? resumableIdentifier : resumableIdentifier.substring(0, commaIndex);
+    }
+
+    @Override
+    public ResponseEntity<Result<String>> getCover(String resumableIdentifier) {
+        String state = coverService.getCoverState(resumableIdentifier);
+        if (COVER_STATE_READY.equals(state)) {
+            return ResponseEntity.ok(Result.data(coverService.getCover(resumableIdentifier)));
+        }
+        if (COVER_STATE_FAILED.equals(state)) {
+            return ResponseEntity.ok(Result.error("封面生成失败"));
+        }
         return ResponseEntity.noContent().build();
     }
 
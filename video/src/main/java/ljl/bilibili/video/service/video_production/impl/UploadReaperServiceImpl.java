@@ -0,0 +1,131 @@
+package ljl.bilibili.video.service.video_production.impl;
+
+import cn.hutool.core.io.FileUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import ljl.bilibili.entity.video.video_production.upload.Video;
+import ljl.bilibili.mapper.video.video_production.upload.VideoMapper;
+import ljl.bilibili.video.pojo.UploadPart;
+import ljl.bilibili.video.pojo.UploadReapReport;
+import ljl.bilibili.video.service.video_production.MinioService;
+import ljl.bilibili.video.service.video_production.UploadReaperService;
+import ljl.bilibili.video.service.video_production.UploadSessionService;
+import ljl.bilibili.video.service.video_production.VideoFingerprintService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 定时取出过期的上传会话：未合并的会话在multipart模式下取消分片上传，在compose模式下批量删除分片对象；
+ * 已合并但过期前没有投稿的会话，合并出的视频文件之后也不能再投稿，没有视频记录使用时连同指纹登记一并删除，秒传复用的别人的文件仍被使用不会删除；
+ * 再删除未被投稿使用的暂存封面，以及系统临时目录下超过ttl的上传临时文件
+ */
+@Slf4j
+@Service
+public class UploadReaperServiceImpl implements UploadReaperService {
+    @Resource
+    UploadSessionService uploadSessionService;
+    @Resource
+    MinioService minioService;
+    @Resource
+    VideoMapper videoMapper;
+    @Resource
+    VideoFingerprintService videoFingerprintService;
+    @Value("${upload.session.ttl-minutes:60}")
+    private long ttlMinutes;
+    @Value("${upload.reaper.batch-size:500}")
+    private int batchSize;
+
+    @Override
+    @Scheduled(fixedDelayString = "${upload.reaper.interval-ms:300000}")
+    public UploadReapReport reap() {
+        UploadReapReport report = new UploadReapReport();
+        Map<String, UploadPart> expired;
+        do {
+            expired = uploadSessionService.pollExpired(batchSize);
+            reapSessions(expired, report);
+        } while (expired.size() >= batchSize);
+        reapTempFiles(report);
+        if (report.getSessions() > 0 || report.getTempFiles() > 0) {
+            log.info("回收过期上传会话" + report.getSessions() + "个，删除分片对象" + report.getChunkObjects() + "个，取消分片上传" + report.getMultipartUploads()
+                    + "个，删除未投稿的视频文件" + report.getMergedObjects() + "个，删除暂存封面" + report.getStagedCovers() + "个，删除临时文件" + report.getTempFiles() + "个共" + report.getTempBytes() + "字节");
+        }
+        return report;
+    }
+
+    private void reapSessions(Map<String, UploadPart> expired, UploadReapReport report) {
+        List<String> chunkObjects = new ArrayList<>();
+        List<String> mergedObjects = new ArrayList<>();
+        List<String> stagedCovers = new ArrayList<>();
+        for (UploadPart uploadPart : expired.values()) {
+            Map<String, String> attributes = uploadPart.getAttributeMap();
+            String stagedCover = attributes.get(UPLOAD_COVER);
+            if (stagedCover != null) {
+                stagedCovers.add(stagedCover);
+            }
+            // 已合并的会话分片已经处理过，只看合并出的文件是否被投稿使用
+            String merged = attributes.get(UPLOAD_MERGED);
+            if (merged != null) {
+                if (!isUsed(merged)) {
+                    mergedObjects.add(merged);
+                    String original = videoFingerprintService.remove(merged);
+                    if (original != null) {
+                        mergedObjects.add(original);
+                    }
+                }
+                continue;
+            }
+            String uploadId = attributes.get(UPLOAD_ID);
+            if (uploadId != null) {
+                // 取消分片上传后MinIO会删除已上传的分片
+                if (minioService.abortMultipartUpload(attributes.get(UPLOAD_OBJECT_NAME), uploadId)) {
+                    report.setMultipartUploads(report.getMultipartUploads() + 1);
+                }
+            } else {
+                chunkObjects.addAll(uploadPart.getPartMap().values());
+            }
+        }
+        report.setSessions(report.getSessions() + expired.size());
+        report.setChunkObjects(report.getChunkObjects() + minioService.removeVideoObjects(chunkObjects));
+        report.setMergedObjects(report.getMergedObjects() + minioService.removeVideoObjects(mergedObjects));
+        // 已投稿的暂存封面已被删除，删除不存在的对象不会报错
+        report.setStagedCovers(report.getStagedCovers() + minioService.removeCoverObjects(stagedCovers));
+    }
+
+    /**
+     * 视频记录的url以视频文件名结尾
+     */
+    private boolean isUsed(String objectName) {
+        return videoMapper.selectCount(new LambdaQueryWrapper<Video>().likeLeft(Video::getUrl, "/" + objectName)) > 0;
+    }
+
+    /**
+     * 请求或封面任务异常退出时可能遗留临时文件，按最后修改时间清理
+     */
+    private void reapTempFiles(UploadReapReport report) {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith(UPLOAD_TEMP_PREFIX));
+        if (files == null) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes);
+        for (File file : files) {
+            if (file.lastModified() > deadline) {
+                continue;
+            }
+            long size = FileUtil.size(file);
+            if (FileUtil.del(file)) {
+                report.setTempFiles(report.getTempFiles() + 1);
+                report.setTempBytes(report.getTempBytes() + size);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ljl.bilibili.video.service.video_production.impl;
+
+import cn.hutool.crypto.SecureUtil;
+import ljl.bilibili.video.service.video_production.VideoFingerprintService;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 指纹索引存在redis哈希 video:fingerprint 中：文件指纹-视频文件名；
+ * video:fingerprint:object 为反向索引，video:fingerprint:original 记录转码服务覆盖文件前保留的原始副本
+ */
+@Service
+public class VideoFingerprintServiceImpl implements VideoFingerprintService {
+    @Resource
+    RedisTemplate<String, String> redisTemplate;
+
+    @Override
+    public String fingerprint(Map<String, String> attributes, int totalChunks) {
+        StringBuilder digests = new StringBuilder(totalChunks * 64);
+        for (int i = 1; i <= totalChunks; i++) {
+            String digest = attributes.get(UPLOAD_DIGEST_PREFIX + i);
+            if (digest == null) {
+                return null;
+            }
+            digests.append(digest);
+        }
+        return SecureUtil.sha256(digests.toString());
+    }
+
+    @Override
+    public String find(String fingerprint) {
+        return (String) redisTemplate.opsForHash().get(VIDEO_FINGERPRINT_KEY, fingerprint);
+    }
+
+    @Override
+    public void record(String fingerprint, String objectName) {
+        if (redisTemplate.opsForHash().putIfAbsent(VIDEO_FINGERPRINT_KEY, fingerprint, objectName)) {
+            redisTemplate.opsForHash().put(VIDEO_FINGERPRINT_OBJECT_KEY, objectName, fingerprint);
+        }
+    }
+
+    @Override
+    public String remove(String objectName) {
+        String fingerprint = (String) redisTemplate.opsForHash().get(VIDEO_FINGERPRINT_OBJECT_KEY, objectName);
+        if (fingerprint == null) {
+            return null;
+        }
+        redisTemplate.opsForHash().delete(VIDEO_FINGERPRINT_OBJECT_KEY, objectName);
+        if (!objectName.equals(redisTemplate.opsForHash().get(VIDEO_FINGERPRINT_KEY, fingerprint))) {
+            return null;
+        }
+        redisTemplate.opsForHash().delete(VIDEO_FINGERPRINT_KEY, fingerprint);
+        String original = (String) redisTemplate.opsForHash().get(VIDEO_FINGERPRINT_ORIGINAL_KEY, fingerprint);
+        redisTemplate.opsForHash().delete(VIDEO_FINGERPRINT_ORIGINAL_KEY, fingerprint);
+        return original;
+    }
+
+    @Override
+    public String proofObject(String fingerprint, String objectName) {
+        String original = (String) redisTemplate.opsForHash().get(VIDEO_FINGERPRINT_ORIGINAL_KEY, fingerprint);
+        return original != null ? original : objectName;
+    }
+}
@@ -0,0 +1,93 @@
+package ljl.bilibili.video.util;
+
+import cn.hutool.core.util.HexUtil;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import ljl.bilibili.video.pojo.ChunkChecksum;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static ljl.bilibili.video.constant.Constant.*;
+
+/**
+ * 上传文件落盘与摘要计算
+ */
+public class UploadFileUtil {
+    /**
+     * 每个线程复用一块64KB的读取缓冲区，不随文件大小占用堆内存
+     */
+    private static final ThreadLocal<byte[]> DIGEST_BYTES = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    /**
+     * 把上传文件转存为本地临时文件，servlet已落盘的文件在同一文件系统上直接改名，不经过堆内存
+     */
+    public static File stage(MultipartFile file) throws IOException {
+        File staged = Files.createTempFile(UPLOAD_TEMP_PREFIX, null).toFile();
+        try {
+            file.transferTo(staged);
+        } catch (IOException | RuntimeException e) {
+            staged.delete();
+            throw e;
+        }
+        return staged;
+    }
+
+    /**
+     * 边转存边识别容器格式：从同一个上传流先预读文件头，不是视频时直接返回null，不落盘；是视频时连同文件头一起写入本地临时文件
+     */
+    public static File stageVideo(MultipartFile file) throws IOException {
+        try (PushbackInputStream in = new PushbackInputStream(file.getInputStream(), VideoTypeUtil.HEADER_SIZE)) {
+            if (VideoTypeUtil.detect(in) == null) {
+                return null;
+            }
+            File staged = Files.createTempFile(UPLOAD_TEMP_PREFIX, null).toFile();
+            try {
+                Files.copy(in, staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                staged.delete();
+                throw e;
+            }
+            return staged;
+        }
+    }
+
+    /**
+     * 一次读取文件同时计算SHA-256、MD5和CRC32C：文件通道直接读入复用的字节数组交给各个摘要，不经过额外的复制
+     */
+    public static ChunkChecksum checksum(File file) throws IOException {
+        MessageDigest sha256;
+        MessageDigest md5;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Hasher crc32c = Hashing.crc32c().newHasher();
+        byte[] bytes = DIGEST_BYTES.get();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                int length = buffer.position();
+                sha256.update(bytes, 0, length);
+                md5.update(bytes, 0, length);
+                crc32c.putBytes(bytes, 0, length);
+                buffer.clear();
+            }
+        }
+        return new ChunkChecksum()
+                .setSha256(HexUtil.encodeHexStr(sha256.digest()))
+                .setMd5(HexUtil.encodeHexStr(md5.digest()))
+                .setCrc32c(String.format("%08x", crc32c.hash().asInt()));
+    }
+}
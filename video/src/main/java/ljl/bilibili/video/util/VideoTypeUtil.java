@@ -0,0 +1,80 @@
+package ljl.bilibili.video.util;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按文件头的魔数识别视频容器格式，只读取流开头的少量字节
+ */
+public class VideoTypeUtil {
+    /**
+     * 需要预读的字节数：MPEG-TS要看第0和第188字节处的同步字节
+     */
+    public static final int HEADER_SIZE = 189;
+    private static final byte[] EBML = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] ASF = {0x30, 0x26, (byte) 0xB2, 0x75, (byte) 0x8E, 0x66, (byte) 0xCF, 0x11};
+    private static final byte[] MPEG_PS = {0x00, 0x00, 0x01, (byte) 0xBA};
+
+    /**
+     * 预读文件头识别容器格式，读过的字节会退回流中，调用方可以继续从头读取
+     * @param in 回退缓冲区不小于HEADER_SIZE
+     * @return mp4、webm、avi、flv、ts、mpeg、wmv，无法识别返回null
+     */
+    public static String detect(PushbackInputStream in) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+        int read;
+        while (length < HEADER_SIZE && (read = in.read(header, length, HEADER_SIZE - length)) != -1) {
+            length += read;
+        }
+        if (length > 0) {
+            in.unread(header, 0, length);
+        }
+        return detect(header, length);
+    }
+
+    public static String detect(byte[] header, int length) {
+        // MP4/MOV/3GP：第一个box类型为ftyp，老的QuickTime文件可能直接以moov、mdat、wide、free开头
+        if (length >= 8) {
+            String boxType = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+            if ("ftyp".equals(boxType) || "moov".equals(boxType) || "mdat".equals(boxType)
+                    || "wide".equals(boxType) || "free".equals(boxType)) {
+                return "mp4";
+            }
+        }
+        // WebM/MKV：EBML头
+        if (startsWith(header, length, EBML)) {
+            return "webm";
+        }
+        if (length >= 12 && "RIFF".equals(new String(header, 0, 4, StandardCharsets.ISO_8859_1))
+                && "AVI ".equals(new String(header, 8, 4, StandardCharsets.ISO_8859_1))) {
+            return "avi";
+        }
+        if (length >= 4 && header[0] == 'F' && header[1] == 'L' && header[2] == 'V' && header[3] == 0x01) {
+            return "flv";
+        }
+        if (length >= HEADER_SIZE && header[0] == 0x47 && header[188] == 0x47) {
+            return "ts";
+        }
+        if (startsWith(header, length, MPEG_PS)) {
+            return "mpeg";
+        }
+        if (startsWith(header, length, ASF)) {
+            return "wmv";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,4 +21,16 @@ public class UploadPartRequest {
      * 分片序号
      */
     Integer resumableChunkNumber;
+    /**
+     * 分片的MD5（十六进制），可选，不一致时拒绝该分片
+     */
+    String resumableChunkMd5;
+    /**
+     * 分片的CRC32C（8位十六进制），可选，不一致时拒绝该分片
+     */
+    String resumableChunkCrc32c;
+    /**
+     * 整个文件的指纹，可选，随第一个分片传入；命中已有文件时不再接收分片，改为秒传校验
+     */
+    String fingerprint;
 }
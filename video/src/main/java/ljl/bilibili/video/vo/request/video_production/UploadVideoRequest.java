@@ -2,7 +2,6 @@ package ljl.bilibili.video.vo.request.video_production;
 
 import io.swagger.annotations.ApiModelProperty;
 import ljl.bilibili.entity.notice.dynamic.Dynamic;
-import ljl.bilibili.entity.user_center.user_info.User;
 import ljl.bilibili.entity.video.video_production.upload.Video;
 import lombok.Data;
 import org.springframework.beans.BeanUtils;
@@ -10,15 +9,17 @@ import org.springframework.web.multipart.MultipartFile;
 
 @Data
 public class UploadVideoRequest {
-    @ApiModelProperty("视频路径")
+    @ApiModelProperty("视频路径，由服务端按上传会话填入，客户端传入的值不生效")
     private String url;
+    @ApiModelProperty("上传会话的文件标识符，视频文件以该会话中已合并或秒传验证通过的文件为准")
+    private String resumableIdentifier;
     @ApiModelProperty("视频名称")
     private String name;
     @ApiModelProperty("视频介绍")
     private String intro;
     @ApiModelProperty("作者id")
     private int userId;
-    @ApiModelProperty("视频封面")
+    @ApiModelProperty("视频封面，上传分片或getCover返回的封面暂存对象名")
     private String videoCover;
     public Video toEntity() {
         Video video = new Video();
@@ -27,12 +28,12 @@ public class UploadVideoRequest {
     }
 
 
-    public Dynamic toNoCoverDynamic(User user, Video video){
+    public Dynamic toNoCoverDynamic(Integer authorId, Video video){
         return new Dynamic().setVideoId(video.getId()).setVideoName(video.getName())
-                .setAuthorId(user.getId());
+                .setAuthorId(authorId);
     }
-    public Dynamic toCoverDynamic(User user, Video video){
+    public Dynamic toCoverDynamic(Integer authorId, Video video){
         return new Dynamic().setVideoId(video.getId()).setVideoCover(video.getCover()).setVideoName(video.getName())
-                .setAuthorId(user.getId());
+                .setAuthorId(authorId);
     }
 }
@@ -1,7 +1,9 @@
 package ljl.bilibili.video.vo.response.audience_reactions.play;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.annotations.ApiModelProperty;
+import ljl.bilibili.serializer.RemoveTDeserializer;
 import ljl.bilibili.serializer.RemoveTSerializer;
 import lombok.Data;
 import lombok.experimental.Accessors;
@@ -22,6 +24,7 @@ public class FirstPageVideoResponse {
     @ApiModelProperty("视频名")
     private String name;
     @JsonSerialize(using = RemoveTSerializer.class)
+    @JsonDeserialize(using = RemoveTDeserializer.class)
     @ApiModelProperty("创建时间")
     private LocalDateTime createTime;
     @ApiModelProperty("播放量")
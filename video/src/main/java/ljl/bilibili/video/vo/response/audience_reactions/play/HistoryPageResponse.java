@@ -0,0 +1,18 @@
+package ljl.bilibili.video.vo.response.audience_reactions.play;
+
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data
+@Accessors(chain = true)
+public class HistoryPageResponse {
+    @ApiModelProperty("本页历史视频，按观看时间倒序")
+    private List<HistoryVideoResponse> videos;
+    @ApiModelProperty("下一页游标，原样传回即可，没有更多时为空")
+    private String nextCursor;
+    @ApiModelProperty("是否还有下一页")
+    private boolean hasMore;
+}
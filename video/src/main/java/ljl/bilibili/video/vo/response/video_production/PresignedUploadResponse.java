@@ -0,0 +1,24 @@
+package ljl.bilibili.video.vo.response.video_production;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data
+@Accessors(chain = true)
+public class PresignedUploadResponse {
+    /**
+     * 合并后的视频文件名
+     */
+    private String objectName;
+    private String uploadId;
+    /**
+     * 第n个分片的预签名PUT地址在下标n-1处，客户端直接把分片PUT到MinIO
+     */
+    private List<String> partUrls;
+    /**
+     * 预签名地址的有效期（秒），过期前重新调用创建接口获取新地址
+     */
+    private int expirySeconds;
+}
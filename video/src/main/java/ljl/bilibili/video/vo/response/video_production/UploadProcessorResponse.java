@@ -10,4 +10,8 @@ import java.util.List;
 public class UploadProcessorResponse {
     private double percent;
     private List<Integer> uploadedIndexList;
+    /**
+     * 已上传分片的位图（Base64）：第n个分片对应第n-1位，字节内低位在前
+     */
+    private String bitmap;
 }